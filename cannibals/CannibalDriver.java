@@ -25,6 +25,24 @@ public class CannibalDriver {
 		System.out.println(path);
 		mcProblem.printStats();
 		System.out.println("--------");
+
+		path = UUSearchProblem.packedBreadthFirstSearch(mcProblem);
+		System.out.println("packed bfs path length:  " + path.size());
+		System.out.println(path);
+		mcProblem.printStats();
+		System.out.println("--------");
+
+		path = mcProblem.parallelBreadthFirstSearch(Runtime.getRuntime().availableProcessors());
+		System.out.println("parallel bfs path length:  " + path.size());
+		System.out.println(path);
+		mcProblem.printStats();
+		System.out.println("--------");
+
+		path = mcProblem.bidirectionalSearch();
+		System.out.println("bidirectional bfs path length:  " + path.size());
+		System.out.println(path);
+		mcProblem.printStats();
+		System.out.println("--------");
 		
 	
 		path = mcProblem.depthFirstMemoizingSearch(MAXDEPTH);	
@@ -33,6 +51,12 @@ public class CannibalDriver {
 		mcProblem.printStats();
 		System.out.println("--------");
 		
+		path = UUSearchProblem.packedDepthFirstMemoizingSearch(mcProblem, MAXDEPTH);
+		System.out.println("packed dfs memoizing path length:" + path.size());
+		System.out.println(path);
+		mcProblem.printStats();
+		System.out.println("--------");
+
 		path = mcProblem.depthFirstPathCheckingSearch(MAXDEPTH);
 		System.out.println("dfs path checking path length:" + path.size());
 		System.out.println(path);
@@ -44,6 +68,12 @@ public class CannibalDriver {
 		System.out.println("Iterative deepening (path checking) path length:" + path.size());
 		System.out.println(path);
 		mcProblem.printStats();
+
+		System.out.println("--------");
+		path = mcProblem.IDSearch(MAXDEPTH, 1 << 20);
+		System.out.println("Iterative deepening (cached frontier) path length:" + path.size());
+		System.out.println(path);
+		mcProblem.printStats();
 		
 	}
 }
@@ -6,22 +6,114 @@ package cannibals;
 import java.util.ArrayList;
 import java.util.Arrays;
 
-public class CannibalProblem extends UUSearchProblem {
+public class CannibalProblem extends UUSearchProblem implements PackedSearchProblem {
+	private final static int DEFAULT_BOAT_SIZE = 2;
+
 	private int goalm, goalc, goalb;
 	private int totalMissionaries, totalCannibals; 
+	private int boatSize;
 
 	public CannibalProblem(int sm, int sc, int sb, int gm, int gc, int gb) {
-		startNode = new CannibalNode(sm, sc, sb, 0);
+		this(sm, sc, sb, gm, gc, gb, DEFAULT_BOAT_SIZE);
+	}
+
+	/**
+	 * @param boatSize: Number of people the boat holds
+	 */
+	public CannibalProblem(int sm, int sc, int sb, int gm, int gc, int gb, int boatSize) {
 		goalm = gm;
 		goalc = gc;
 		goalb = gb;
 		totalMissionaries = sm;
 		totalCannibals = sc;
+		this.boatSize = boatSize;
+		startNode = new CannibalNode(sm, sc, sb, 0);
+		goalNode = new CannibalNode(gm, gc, gb, 0);
+	}
+
+	/**
+	 * A state is packed as the missionaries in the upper 32 bits, and the
+	 * cannibals and the boat in the lower ones.
+	 */
+	private static long pack(int m, int c, int b) {
+		return (long) m << 32 | c << 1 | b;
+	}
+
+	@Override
+	public long getPackedStartState() {
+		return ((CannibalNode) startNode).getPackedState();
+	}
+
+	/**
+	 * Retrieve all the possible states from a packed state
+	 * and find out which of them are safe to reach
+	 */
+	@Override
+	public int getPackedSuccessors(long packedState, long[] successors) {
+		int m = (int) (packedState >>> 32);
+		int c = (int) packedState >>> 1;
+		int b = (int) packedState & 1;
+		int count = 0;
+
+		// direction defines whether it is a
+		// subtraction (boat is left -> right) or
+		//    addition (boat is right -> left)
+		int direction = b == 1 ? -1 : 1;
+		int missionariesMax = b == 1 ? m : totalMissionaries - m;
+		int cannibalsMax = b == 1 ? c : totalCannibals - c;
+		// i is the number of missionaries who will be on the boat
+		for (int i = 0; i <= missionariesMax && i <= boatSize; i++) {
+			// j is the number of cannibals who will be on the boat
+			for (int j = 0; j <= cannibalsMax; j++) {
+				if (i + j == 0) {
+					// Someone has to be on the boat
+					continue;
+				} else if (i + j > boatSize) {
+					// Already exceeds, stop incrementing
+					break;
+				}
+				// check the whether the state is safe or not
+				if (isSafeState(m + direction * i, c + direction * j)) {
+					successors[count++] = pack(m + direction * i, c + direction * j, b + direction);
+				}
+			}
+		}
+		return count;
+	}
+
+	@Override
+	public boolean packedGoalTest(long packedState) {
+		return packedState == pack(goalm, goalc, goalb);
+	}
+
+	@Override
+	public UUSearchNode unpack(long packedState, int depth) {
+		return new CannibalNode((int) (packedState >>> 32), (int) packedState >>> 1, (int) packedState & 1, depth);
+	}
+
+	@Override
+	public int getMaxSuccessors() {
+		// every split of 1 to boatSize people into missionaries and cannibals
+		return (boatSize + 1) * (boatSize + 2) / 2 - 1;
+	}
+
+	/**
+	 * @author Xiankai Yang
+	 * 
+	 * Determine the safety of both sides of the river
+	 * @param missionaries 
+	 * @param cannibals
+	 * 
+	 * @return whether the current state is safe or not
+	 */
+	private boolean isSafeState(int missionaries, int cannibals) {
+		boolean leftSafe = missionaries == 0 || missionaries >= cannibals;
+		boolean rightSafe = totalMissionaries - missionaries == 0
+				|| totalMissionaries - missionaries >= totalCannibals - cannibals;
+		return leftSafe && rightSafe;
 	}
 	
 	private class CannibalNode implements UUSearchNode {
-		private final static int BOAT_SIZE = 2;
-		
 		private int[] state; 
 		private int depth;  
 
@@ -44,33 +136,12 @@ public class CannibalProblem extends UUSearchProblem {
 		 * @return a list of safe and reachable nodes from this cannibal node
 		 */
 		public ArrayList<UUSearchNode> getSuccessors() {
-			ArrayList<UUSearchNode> successors = new ArrayList<UUSearchNode>();
-			// direction defines whether it is a
-			// subtraction (boat is left -> right) or
-			//    addition (boat is right -> left)
-			int direction = state[2] == 1 ? -1 : 1;
-			int missionariesMax = state[2] == 1 ? state[0] : totalMissionaries - state[0];
-			int cannibalsMax = state[2] == 1 ? state[1] : totalCannibals - state[1];
-			// i is the number of missionaries who will be on the boat
-			for (int i = 0; i <= missionariesMax; i++) {
-				// j is the number of cannibals who will be on the boat
-				for (int j = 0; j <= cannibalsMax; j++) {
-					if (i + j == 0) {
-						// Someone has to be on the boat
-						continue;
-					} else if (i + j > BOAT_SIZE) {
-						// Already exceeds, stop incrementing
-						break;
-					}
-					// check the whether the state is safe or not
-					if (isSafeState(state[0] + direction * i, state[1] + direction * j)) {
-						successors.add(new CannibalNode(
-								state[0] + direction * i,
-								state[1] + direction * j,
-								state[2] + direction,
-								depth + 1));
-					}
-				}
+			long[] packedSuccessors = new long[getMaxSuccessors()];
+			int count = getPackedSuccessors(getPackedState(), packedSuccessors);
+
+			ArrayList<UUSearchNode> successors = new ArrayList<UUSearchNode>(count);
+			for (int i = 0; i < count; i++) {
+				successors.add(unpack(packedSuccessors[i], depth + 1));
 			}
 			//System.out.println(this + "'s successors are " + successors);
 			return successors;
@@ -88,7 +159,12 @@ public class CannibalProblem extends UUSearchProblem {
 
 		@Override
 		public int hashCode() {
-			return state[0] * 100 + state[1] * 10 + state[2];
+			// distinct for every state, which state[0] * 100 + ... is not for large populations
+			return (state[0] * (totalCannibals + 1) + state[1]) * 2 + state[2];
+		}
+
+		public long getPackedState() {
+			return pack(state[0], state[1], state[2]);
 		}
 
 		@Override
@@ -101,21 +177,5 @@ public class CannibalProblem extends UUSearchProblem {
 			return depth;
 		}
 
-		/**
-		 * @author Xiankai Yang
-		 * 
-		 * Determine the safety of both sides of the river
-		 * @param missionaries 
-		 * @param cannibals
-		 * 
-		 * @return whether the current state is safe or not
-		 */
-		private boolean isSafeState(int missionaries, int cannibals) {
-			boolean leftSafe = missionaries == 0 || missionaries >= cannibals;
-			boolean rightSafe = totalMissionaries - missionaries == 0
-					|| totalMissionaries - missionaries >= totalCannibals - cannibals;
-			return leftSafe && rightSafe;
-		}
-
 	}
 }
@@ -0,0 +1,110 @@
+package cannibals;
+
+import java.util.Arrays;
+
+/**
+ * A hash map from long to long with open addressing and linear probing,
+ * kept in two primitive arrays, so that neither keys nor values are boxed
+ * and an entry costs 16 bytes plus the free slots.
+ * 
+ * Long.MIN_VALUE marks a free slot and cannot be used as a key.
+ */
+class LongLongHashMap {
+	static final long NO_KEY = Long.MIN_VALUE;
+
+	private long[] keys;
+	private long[] values;
+	private int mask;
+	private int size;
+
+	/**
+	 * @param expectedSize: Number of entries the map holds without growing
+	 */
+	LongLongHashMap(int expectedSize) {
+		// at most half of the slots are used
+		int capacity = Integer.highestOneBit(Math.max(4, expectedSize) * 2 - 1) * 2;
+		allocate(capacity);
+	}
+
+	int size() {
+		return size;
+	}
+
+	boolean containsKey(long key) {
+		return keys[find(key)] != NO_KEY;
+	}
+
+	/**
+	 * @return the value of the key, or defaultValue if the key is not in the map
+	 */
+	long get(long key, long defaultValue) {
+		int slot = find(key);
+		return keys[slot] != NO_KEY ? values[slot] : defaultValue;
+	}
+
+	/**
+	 * Add the key with the value, or replace the value of the key.
+	 */
+	void put(long key, long value) {
+		int slot = find(key);
+
+		if (keys[slot] == NO_KEY) {
+			keys[slot] = key;
+			size++;
+
+			if (size * 2 > keys.length) {
+				values[slot] = value;
+				grow();
+				return;
+			}
+		}
+		values[slot] = value;
+	}
+
+	/**
+	 * @return the slot of the key, or the free slot where it would go
+	 */
+	private int find(long key) {
+		int slot = hash(key) & mask;
+
+		while (keys[slot] != NO_KEY && keys[slot] != key) {
+			slot = (slot + 1) & mask;
+		}
+		return slot;
+	}
+
+	private void grow() {
+		long[] oldKeys = keys;
+		long[] oldValues = values;
+
+		allocate(keys.length * 2);
+
+		for (int i = 0; i < oldKeys.length; i++) {
+			if (oldKeys[i] != NO_KEY) {
+				int slot = find(oldKeys[i]);
+				keys[slot] = oldKeys[i];
+				values[slot] = oldValues[i];
+			}
+		}
+	}
+
+	private void allocate(int capacity) {
+		keys = new long[capacity];
+		values = new long[capacity];
+		Arrays.fill(keys, NO_KEY);
+		mask = capacity - 1;
+	}
+
+	/**
+	 * Packed states are often small, consecutive numbers, so their bits are
+	 * mixed (the finalizer of MurmurHash3) before they pick a slot.
+	 */
+	private static int hash(long key) {
+		key ^= key >>> 33;
+		key *= 0xff51afd7ed558ccdL;
+		key ^= key >>> 33;
+		key *= 0xc4ceb9fe1a85ec53L;
+		key ^= key >>> 33;
+		return (int) key;
+	}
+}
@@ -0,0 +1,54 @@
+package cannibals;
+
+/**
+ * A first-in first-out queue of longs in a circular array indexed by int
+ * positions, which doubles when it is full. Unlike a LinkedList, it
+ * allocates nothing per element.
+ */
+class LongRingBuffer {
+	private long[] elements;
+	private int head;
+	private int size;
+
+	LongRingBuffer(int initialCapacity) {
+		elements = new long[Integer.highestOneBit(Math.max(2, initialCapacity) * 2 - 1)];
+	}
+
+	boolean isEmpty() {
+		return size == 0;
+	}
+
+	int size() {
+		return size;
+	}
+
+	void add(long element) {
+		if (size == elements.length) {
+			grow();
+		}
+		elements[(head + size) & (elements.length - 1)] = element;
+		size++;
+	}
+
+	/**
+	 * @return the oldest element, which is removed; the queue must not be empty
+	 */
+	long poll() {
+		long element = elements[head];
+		head = (head + 1) & (elements.length - 1);
+		size--;
+		return element;
+	}
+
+	private void grow() {
+		long[] newElements = new long[elements.length * 2];
+
+		// unwrap the elements to the start of the new array
+		int tail = elements.length - head;
+		System.arraycopy(elements, head, newElements, 0, tail);
+		System.arraycopy(elements, 0, newElements, tail, head);
+
+		elements = newElements;
+		head = 0;
+	}
+}
@@ -0,0 +1,38 @@
+package cannibals;
+
+import cannibals.UUSearchProblem.UUSearchNode;
+
+/**
+ * A problem whose states fit in a long, so that the packed searches of
+ * UUSearchProblem can work on the states instead of node objects, with
+ * primitive collections.
+ */
+public interface PackedSearchProblem {
+
+	/**
+	 * @return the state of the start node packed into a long other than
+	 * Long.MIN_VALUE
+	 */
+	public long getPackedStartState();
+
+	/**
+	 * @param state: A packed state
+	 * @param successors: Buffer for the packed successor states, at least
+	 * getMaxSuccessors() long
+	 *
+	 * @return the number of successors, which are put at the start of the buffer
+	 */
+	public int getPackedSuccessors(long state, long[] successors);
+
+	public boolean packedGoalTest(long state);
+
+	/**
+	 * @return the node of a packed state, to build the path that is returned
+	 */
+	public UUSearchNode unpack(long state, int depth);
+
+	/**
+	 * @return the largest number of successors a state can have
+	 */
+	public int getMaxSuccessors();
+}
@@ -4,22 +4,44 @@
 package cannibals;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicReference;
 
 public abstract class UUSearchProblem {
 	protected int nodesExplored;
 	protected int maxMemory;
+	// Nodes explored by every iteration of the last iterative deepening search
+	protected ArrayList<Integer> iterationNodesExplored = new ArrayList<Integer>();
 
 	protected UUSearchNode startNode;
+
+	// The goal node, for searches that also search backward from the goal;
+	// null if the problem has no single goal node
+	protected UUSearchNode goalNode;
 	
 	protected interface UUSearchNode {
 		public ArrayList<UUSearchNode> getSuccessors();
 		public boolean goalTest();
 		public int getDepth();
+
+		/**
+		 * The nodes from which this node can be reached in one step. Every
+		 * step of a reversible problem can be undone, so by default these
+		 * are the successors.
+		 * 
+		 * @return a list of the nodes that have this node as a successor
+		 */
+		public default ArrayList<UUSearchNode> getPredecessors() {
+			return getSuccessors();
+		}
 	}
 
 	/**
@@ -61,6 +83,218 @@ public abstract class UUSearchProblem {
 		return null;
 	}
 	
+	/**
+	 * Level-synchronous BFS: every level of the graph is expanded by the
+	 * threads of a fork-join pool, which split the level between them and
+	 * drop the successors that any of them has visited already. The search
+	 * stops after the first level that contains a goal node, so the path is
+	 * as long as the one of breadthFirstSearch. Stats are updated per level,
+	 * so the nodes explored include the whole level of the goal.
+	 * 
+	 * getSuccessors and goalTest are called by several threads at once.
+	 * 
+	 * @param parallelism: Number of threads
+	 * 
+	 * @return a list of connecting nodes from the start node to the goal node
+	 * if there is a path from the start node to the goal node, null otherwise.
+	 */
+	public List<UUSearchNode> parallelBreadthFirstSearch(int parallelism) {
+		resetStats();
+
+		ConcurrentHashMap<UUSearchNode, UUSearchNode> visited = new ConcurrentHashMap<UUSearchNode, UUSearchNode>();
+		AtomicReference<UUSearchNode> goal = new AtomicReference<UUSearchNode>();
+
+		// a ConcurrentHashMap cannot hold null, so the start node is its own parent
+		visited.put(startNode, startNode);
+
+		List<UUSearchNode> level = new ArrayList<UUSearchNode>();
+		level.add(startNode);
+
+		ForkJoinPool pool = new ForkJoinPool(parallelism);
+
+		try {
+			while (!level.isEmpty() && goal.get() == null) {
+				level = pool.invoke(new LevelExpansion(level, 0, level.size(), visited, goal));
+
+				nodesExplored = visited.size() - 1;
+				updateMemory(visited.size());
+			}
+		} finally {
+			pool.shutdown();
+		}
+
+		if (goal.get() == null) {
+			return null;
+		}
+
+		List<UUSearchNode> nodeList = new LinkedList<UUSearchNode>();
+		UUSearchNode node = goal.get();
+
+		while (node != startNode) {
+			nodeList.add(0, node);
+			node = visited.get(node);
+		}
+		nodeList.add(0, startNode);
+
+		return nodeList;
+	}
+
+	/**
+	 * Expands a range of a BFS level, splitting it in halves until it is
+	 * small enough for one thread.
+	 */
+	private static class LevelExpansion extends RecursiveTask<List<UUSearchNode>> {
+		private static final long serialVersionUID = 1L;
+
+		private static final int THRESHOLD = 256;
+
+		private final List<UUSearchNode> level;
+		private final int from, to;
+		private final ConcurrentHashMap<UUSearchNode, UUSearchNode> visited;
+		private final AtomicReference<UUSearchNode> goal;
+
+		LevelExpansion(List<UUSearchNode> level, int from, int to,
+				ConcurrentHashMap<UUSearchNode, UUSearchNode> visited, AtomicReference<UUSearchNode> goal) {
+			this.level = level;
+			this.from = from;
+			this.to = to;
+			this.visited = visited;
+			this.goal = goal;
+		}
+
+		/**
+		 * @return the nodes of the next level found in the range
+		 */
+		@Override
+		protected List<UUSearchNode> compute() {
+			if (to - from > THRESHOLD) {
+				int middle = (from + to) >>> 1;
+				LevelExpansion second = new LevelExpansion(level, middle, to, visited, goal);
+				second.fork();
+
+				List<UUSearchNode> nextLevel = new LevelExpansion(level, from, middle, visited, goal).compute();
+				nextLevel.addAll(second.join());
+				return nextLevel;
+			}
+
+			List<UUSearchNode> nextLevel = new ArrayList<UUSearchNode>();
+
+			for (int i = from; i < to && goal.get() == null; i++) {
+				UUSearchNode currentNode = level.get(i);
+
+				for (UUSearchNode successor : currentNode.getSuccessors()) {
+					// only the thread that adds the node expands it
+					if (visited.putIfAbsent(successor, currentNode) == null) {
+						if (successor.goalTest()) {
+							goal.compareAndSet(null, successor);
+						}
+						nextLevel.add(successor);
+					}
+				}
+			}
+			return nextLevel;
+		}
+	}
+
+	/**
+	 * Search the graph with BFS from the startNode and backward from the
+	 * goalNode at the same time, always expanding a whole level of the
+	 * smaller frontier, until the frontiers meet. Each search only has to
+	 * go about half the depth, so it explores and stores far fewer nodes.
+	 * 
+	 * Falls back to BFS if the problem has no goalNode.
+	 * 
+	 * @return a list of connecting nodes from the start node to the goal node
+	 * if there is a path from the start node to the goal node, null otherwise.
+	 */
+	public List<UUSearchNode> bidirectionalSearch() {
+		if (goalNode == null) {
+			return breadthFirstSearch();
+		}
+
+		resetStats();
+
+		if (startNode.equals(goalNode)) {
+			List<UUSearchNode> nodeList = new LinkedList<UUSearchNode>();
+			nodeList.add(startNode);
+			return nodeList;
+		}
+
+		Queue<UUSearchNode> forwardQueue = new LinkedList<UUSearchNode>();
+		Queue<UUSearchNode> backwardQueue = new LinkedList<UUSearchNode>();
+		// The parent of a node on the way from the start, and the child of a
+		// node on the way to the goal
+		HashMap<UUSearchNode, UUSearchNode> forwardVisited = new HashMap<UUSearchNode, UUSearchNode>();
+		HashMap<UUSearchNode, UUSearchNode> backwardVisited = new HashMap<UUSearchNode, UUSearchNode>();
+
+		forwardQueue.add(startNode);
+		forwardVisited.put(startNode, null);
+		backwardQueue.add(goalNode);
+		backwardVisited.put(goalNode, null);
+
+		while (!forwardQueue.isEmpty() && !backwardQueue.isEmpty()) {
+			UUSearchNode meetingNode;
+
+			if (forwardQueue.size() <= backwardQueue.size()) {
+				meetingNode = expandLevel(forwardQueue, forwardVisited, backwardVisited, true);
+			} else {
+				meetingNode = expandLevel(backwardQueue, backwardVisited, forwardVisited, false);
+			}
+
+			if (meetingNode != null) {
+				// The start half by backchaining, then the goal half by
+				// following the children
+				List<UUSearchNode> nodeList = backchain(meetingNode, forwardVisited);
+				UUSearchNode node = backwardVisited.get(meetingNode);
+
+				while (node != null) {
+					nodeList.add(node);
+					node = backwardVisited.get(node);
+				}
+
+				return nodeList;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Expand every node of the current level of one side of the bidirectional
+	 * search. As the visited nodes of both sides are disjoint until they meet,
+	 * the first node found by the other side lies on a shortest path.
+	 * 
+	 * @param queue: The frontier of the side, which holds one level
+	 * @param visited: A hash map with the nodes the side has visited as keys and
+	 * the nodes they were reached from as values
+	 * @param otherVisited: The visited nodes of the other side
+	 * @param forward: Whether the side searches from the start node
+	 * 
+	 * @return the node where the sides meet, or null if they do not meet yet
+	 */
+	private UUSearchNode expandLevel(Queue<UUSearchNode> queue, HashMap<UUSearchNode, UUSearchNode> visited,
+			HashMap<UUSearchNode, UUSearchNode> otherVisited, boolean forward) {
+		for (int levelSize = queue.size(); levelSize > 0; levelSize--) {
+			UUSearchNode currentNode = queue.poll();
+			List<UUSearchNode> neighbors = forward ? currentNode.getSuccessors() : currentNode.getPredecessors();
+
+			for (UUSearchNode neighbor : neighbors) {
+				if (!visited.containsKey(neighbor)) {
+					// Mark this node as visited and update the stats
+					visited.put(neighbor, currentNode);
+					updateMemory(visited.size() + otherVisited.size());
+					incrementNodeCount();
+
+					if (otherVisited.containsKey(neighbor)) {
+						return neighbor;
+					}
+
+					queue.add(neighbor);
+				}
+			}
+		}
+		return null;
+	}
+	
 	/**
 	 * @author Xiankai Yang
 	 * 
@@ -85,69 +319,220 @@ public abstract class UUSearchProblem {
 	}
 
 	/**
-	 * @author Xiankai Yang
+	 * BFS like breadthFirstSearch, but on packed states: the parents are
+	 * kept in an open-addressing long to long map and the frontier in a
+	 * ring buffer of longs, so no node is created until the path is built.
 	 * 
-	 * Start from the startNode and search the graph using memoizing DFS
-	 * 
-	 * @param maxDepth: Maximum depth that DFS can search
+	 * @param problem: Problem to search, whose stats are updated
 	 * 
 	 * @return a list of connecting nodes from the start node to the goal node
+	 * if there is a path from the start node to the goal node, null otherwise.
 	 */
-	public List<UUSearchNode> depthFirstMemoizingSearch(int maxDepth) {
-		resetStats(); 
+	public static <P extends UUSearchProblem & PackedSearchProblem> List<UUSearchNode> packedBreadthFirstSearch(
+			P problem) {
+		problem.resetStats();
 
-		HashMap<UUSearchNode, Integer> visited = new HashMap<UUSearchNode, Integer>();
-		
-		return dfsrm(startNode, visited, 0, maxDepth);
+		long[] successors = new long[problem.getMaxSuccessors()];
+		LongRingBuffer queue = new LongRingBuffer(1024);
+		LongLongHashMap visited = new LongLongHashMap(1024);
+
+		long startState = problem.getPackedStartState();
+		queue.add(startState);
+		visited.put(startState, LongLongHashMap.NO_KEY);
+
+		while (!queue.isEmpty()) {
+			long currentState = queue.poll();
+			int successorCount = problem.getPackedSuccessors(currentState, successors);
+
+			for (int i = 0; i < successorCount; i++) {
+				long successor = successors[i];
+
+				if (!visited.containsKey(successor)) {
+					// Mark this state as visited and update the stats
+					visited.put(successor, currentState);
+					problem.updateMemory(visited.size());
+					problem.incrementNodeCount();
+
+					if (problem.packedGoalTest(successor)) {
+						return backchain(problem, successor, visited);
+					}
+
+					queue.add(successor);
+				}
+			}
+		}
+		return null;
 	}
 
 	/**
-	 * @author Xiankai Yang
+	 * Backchain packed states like backchain does nodes.
 	 * 
-	 * Recursive function that implements memoizing DFS with maximum depth
+	 * @param problem: Problem that unpacks the states
+	 * @param state: Goal state of the problem
+	 * @param visited: The visited states as keys and their parent states as values
 	 * 
-	 * @param currentNode: Current node during the DFS
-	 * @param visited: A hash map with the visited nodes as keys and their depths as values
-	 * @param depth: Current depth
-	 * @param maxDepth: Maximum depth
+	 * @return a list of connecting nodes from the start node to the goal node
+	 */
+	private static List<UUSearchNode> backchain(PackedSearchProblem problem, long state, LongLongHashMap visited) {
+		ArrayList<Long> states = new ArrayList<Long>();
+
+		while (state != LongLongHashMap.NO_KEY) {
+			states.add(state);
+			state = visited.get(state, LongLongHashMap.NO_KEY);
+		}
+
+		List<UUSearchNode> nodeList = new ArrayList<UUSearchNode>(states.size());
+		for (int depth = 0; depth < states.size(); depth++) {
+			nodeList.add(problem.unpack(states.get(states.size() - 1 - depth), depth));
+		}
+
+		return nodeList;
+	}
+
+	/**
+	 * Memoizing DFS like depthFirstMemoizingSearch, but on packed states,
+	 * with the depths kept in an open-addressing long to long map and a
+	 * preallocated successor buffer for every depth.
+	 * 
+	 * @param problem: Problem to search, whose stats are updated
+	 * @param maxDepth: Maximum depth that DFS can search
 	 * 
 	 * @return a list of connecting nodes from the start node to the goal node
 	 */
-	private List<UUSearchNode> dfsrm(UUSearchNode currentNode, HashMap<UUSearchNode, Integer> visited, 
-			int depth, int maxDepth) {
-		// "base case"
-		if (depth > maxDepth || visited.containsKey(currentNode)) {
+	public static <P extends UUSearchProblem & PackedSearchProblem> List<UUSearchNode> packedDepthFirstMemoizingSearch(
+			P problem, int maxDepth) {
+		problem.resetStats();
+
+		LongLongHashMap visited = new LongLongHashMap(1024);
+		PackedStack stack = new PackedStack(problem);
+
+		long startState = problem.getPackedStartState();
+		if (maxDepth < 0) {
 			return null;
 		}
 
-		// Mark this node as visited and update the stats
-		visited.put(currentNode, depth);
-		updateMemory(visited.size());
-		incrementNodeCount();
-		
-		// "base case"
-		if (currentNode.goalTest()) {
-			List<UUSearchNode> nodeList = new LinkedList<UUSearchNode>();
-			
-			nodeList.add(0, currentNode);
-			
-			return nodeList;
+		visited.put(startState, 0);
+		problem.updateMemory(visited.size());
+		problem.incrementNodeCount();
+
+		if (problem.packedGoalTest(startState)) {
+			return stack.toNodeList(startState);
 		}
-		
-		List<UUSearchNode> successors = currentNode.getSuccessors();
-		for (UUSearchNode successor : successors) {
-			// "recursive case"
-			List<UUSearchNode> nodeList = dfsrm(successor, visited, depth + 1, maxDepth);
-			
-			if (nodeList != null) {
-				nodeList.add(0, currentNode);
-				
-				return nodeList;
+		stack.push(startState);
+
+		while (!stack.isEmpty()) {
+			int depth = stack.getDepth();
+
+			if (!stack.hasNextSuccessor()) {
+				stack.pop();
+				continue;
+			}
+			long successor = stack.nextSuccessor();
+
+			if (depth + 1 > maxDepth || visited.containsKey(successor)) {
+				continue;
 			}
+
+			// Mark this state as visited and update the stats
+			visited.put(successor, depth + 1);
+			problem.updateMemory(visited.size());
+			problem.incrementNodeCount();
+
+			if (problem.packedGoalTest(successor)) {
+				return stack.toNodeList(successor);
+			}
+			stack.push(successor);
 		}
 		return null;
 	}
-	
+
+	/**
+	 * The packed states of a DFS path, with the successors of every state
+	 * and the index of the next one to search. The buffers are indexed by
+	 * depth, grow with it and are reused by later branches.
+	 */
+	private static class PackedStack {
+		private final PackedSearchProblem problem;
+		private final int maxSuccessors;
+		private long[] states = new long[16];
+		private long[][] successors = new long[16][];
+		private int[] successorCounts = new int[16];
+		private int[] nextSuccessors = new int[16];
+		private int size = 0;
+
+		PackedStack(PackedSearchProblem problem) {
+			this.problem = problem;
+			this.maxSuccessors = problem.getMaxSuccessors();
+		}
+
+		boolean isEmpty() {
+			return size == 0;
+		}
+
+		/**
+		 * @return the depth of the state on top
+		 */
+		int getDepth() {
+			return size - 1;
+		}
+
+		void push(long state) {
+			if (size == states.length) {
+				states = Arrays.copyOf(states, size * 2);
+				successors = Arrays.copyOf(successors, size * 2);
+				successorCounts = Arrays.copyOf(successorCounts, size * 2);
+				nextSuccessors = Arrays.copyOf(nextSuccessors, size * 2);
+			}
+			if (successors[size] == null) {
+				successors[size] = new long[maxSuccessors];
+			}
+
+			states[size] = state;
+			successorCounts[size] = problem.getPackedSuccessors(state, successors[size]);
+			nextSuccessors[size] = 0;
+			size++;
+		}
+
+		void pop() {
+			size--;
+		}
+
+		boolean hasNextSuccessor() {
+			return nextSuccessors[size - 1] < successorCounts[size - 1];
+		}
+
+		long nextSuccessor() {
+			return successors[size - 1][nextSuccessors[size - 1]++];
+		}
+
+		/**
+		 * @return the nodes of the states on the stack, followed by the last state
+		 */
+		List<UUSearchNode> toNodeList(long lastState) {
+			List<UUSearchNode> nodeList = new ArrayList<UUSearchNode>(size + 1);
+			for (int depth = 0; depth < size; depth++) {
+				nodeList.add(problem.unpack(states[depth], depth));
+			}
+			nodeList.add(problem.unpack(lastState, size));
+			return nodeList;
+		}
+	}
+
+	/**
+	 * @author Xiankai Yang
+	 * 
+	 * Start from the startNode and search the graph using memoizing DFS
+	 * 
+	 * @param maxDepth: Maximum depth that DFS can search
+	 * 
+	 * @return a list of connecting nodes from the start node to the goal node
+	 */
+	public List<UUSearchNode> depthFirstMemoizingSearch(int maxDepth) {
+		resetStats(); 
+
+		return depthFirstSearch(maxDepth, false);
+	}
+
 	/**
 	 * @author Devin Balkcom
 	 * 
@@ -160,62 +545,141 @@ public abstract class UUSearchProblem {
 	public List<UUSearchNode> depthFirstPathCheckingSearch(int maxDepth) {
 		resetStats();
 
-		HashSet<UUSearchNode> currentPath = new HashSet<UUSearchNode>();
-
-		return dfsrpc(startNode, currentPath, 0, maxDepth);
+		return depthFirstSearch(maxDepth, true);
 	}
 
 	/**
-	 * @author Xiankai Yang
-	 * 
-	 * Recursive function that implements path-checking DFS with maximum depth
+	 * DFS with maximum depth on an explicit stack instead of the call
+	 * stack, so that it can go as deep as memory allows. The nodes are
+	 * searched in the same order as by recursion, and the path is built
+	 * from the stack once the goal is found.
 	 * 
-	 * @param currentNode: Current node during the DFS
-	 * @param currentPath: A hash set with the visited nodes
-	 * @param depth: Current depth
 	 * @param maxDepth: Maximum depth
+	 * @param pathChecking: Whether only the nodes of the current path are
+	 * kept (path-checking DFS), rather than every visited node (memoizing DFS)
 	 * 
 	 * @return a list of connecting nodes from the start node to the goal node
 	 */
-	private List<UUSearchNode> dfsrpc(UUSearchNode currentNode, HashSet<UUSearchNode> currentPath,
-			int depth, int maxDepth) {
-		if (depth > maxDepth || currentPath.contains(currentNode)) {
+	private List<UUSearchNode> depthFirstSearch(int maxDepth, boolean pathChecking) {
+		// The visited nodes, or the nodes of the current path
+		HashSet<UUSearchNode> visited = new HashSet<UUSearchNode>();
+		NodeStack stack = new NodeStack();
+
+		if (maxDepth < 0) {
 			return null;
 		}
 
 		// Mark this node as visited and update the stats
-		currentPath.add(currentNode);
-		updateMemory(currentPath.size());
+		visited.add(startNode);
+		updateMemory(visited.size());
 		incrementNodeCount();
-		
-		if (currentNode.goalTest()) {
-			// "base case"
-			List<UUSearchNode> nodeList = new LinkedList<UUSearchNode>();
-			
-			nodeList.add(0, currentNode);
-			
-			return nodeList;
+
+		if (startNode.goalTest()) {
+			return stack.toNodeList(startNode);
 		}
-		
-		List<UUSearchNode> successors = currentNode.getSuccessors();
-		for (UUSearchNode successor : successors) {
-			// "recursive case"
-			List<UUSearchNode> nodeList = dfsrpc(successor, currentPath, depth + 1, maxDepth);
-			
-			if (nodeList != null) {
-				nodeList.add(0, currentNode);
-				
-				return nodeList;
+		stack.push(startNode);
+
+		while (!stack.isEmpty()) {
+			int depth = stack.getDepth();
+			UUSearchNode successor = stack.nextSuccessor();
+
+			if (successor == null) {
+				// Cannot find the goal node below this one
+				// No need to update the stats since it's a removal
+				UUSearchNode node = stack.pop();
+				if (pathChecking) {
+					visited.remove(node);
+				}
+				continue;
+			}
+
+			if (depth + 1 > maxDepth || visited.contains(successor)) {
+				continue;
 			}
+
+			// Mark this node as visited and update the stats
+			visited.add(successor);
+			updateMemory(visited.size());
+			incrementNodeCount();
+
+			if (successor.goalTest()) {
+				return stack.toNodeList(successor);
+			}
+			stack.push(successor);
 		}
-		
-		// Cannot find the goal node
-		// No need to update the stats since it's a removal
-		currentPath.remove(currentNode);
-		
 		return null;
 	}
 
+	/**
+	 * The nodes of a DFS path, with the successors of every node and the
+	 * index of the next one to search, in arrays indexed by depth.
+	 */
+	private static class NodeStack {
+		private UUSearchNode[] nodes = new UUSearchNode[16];
+		private List<?>[] successors = new List<?>[16];
+		private int[] nextSuccessors = new int[16];
+		private int size = 0;
+
+		boolean isEmpty() {
+			return size == 0;
+		}
+
+		/**
+		 * @return the depth of the node on top
+		 */
+		int getDepth() {
+			return size - 1;
+		}
+
+		void push(UUSearchNode node) {
+			if (size == nodes.length) {
+				nodes = Arrays.copyOf(nodes, size * 2);
+				successors = Arrays.copyOf(successors, size * 2);
+				nextSuccessors = Arrays.copyOf(nextSuccessors, size * 2);
+			}
+
+			nodes[size] = node;
+			successors[size] = node.getSuccessors();
+			nextSuccessors[size] = 0;
+			size++;
+		}
+
+		/**
+		 * @return the node on top, which is removed
+		 */
+		UUSearchNode pop() {
+			size--;
+			UUSearchNode node = nodes[size];
+			nodes[size] = null;
+			successors[size] = null;
+			return node;
+		}
+
+		/**
+		 * @return the next successor of the node on top, or null if all
+		 * have been searched
+		 */
+		UUSearchNode nextSuccessor() {
+			List<?> nodeSuccessors = successors[size - 1];
+			if (nextSuccessors[size - 1] == nodeSuccessors.size()) {
+				return null;
+			}
+			return (UUSearchNode) nodeSuccessors.get(nextSuccessors[size - 1]++);
+		}
+
+		/**
+		 * @return the nodes on the stack, followed by the last node
+		 */
+		List<UUSearchNode> toNodeList(UUSearchNode lastNode) {
+			List<UUSearchNode> nodeList = new ArrayList<UUSearchNode>(size + 1);
+			for (int depth = 0; depth < size; depth++) {
+				nodeList.add(nodes[depth]);
+			}
+			nodeList.add(lastNode);
+			return nodeList;
+		}
+	}
+
 	/**
 	 * @author Xiankai Yang
 	 * 
@@ -227,29 +691,250 @@ public abstract class UUSearchProblem {
 	 * @return a list of connecting nodes from the start node to the goal node
 	 */
 	public List<UUSearchNode> IDSearch(int maxDepth) {
+		return IDSearch(maxDepth, 0);
+	}
+
+	/**
+	 * Iterative deepening with path-checking DFS and the depth limit from 0
+	 * to maxDepth. It stops early once an iteration was not cut off by its
+	 * limit, since a deeper one would explore the same nodes again.
+	 * 
+	 * The paths that reach the limit of an iteration make up its frontier.
+	 * While the frontier has at most maxFrontier paths, it is kept, and the
+	 * next iteration only expands it by one level instead of walking the
+	 * shallower levels again. Once it grows larger, the iterations restart
+	 * from the start node.
+	 * 
+	 * The nodes explored by every iteration are kept in iterationNodesExplored.
+	 * 
+	 * @param maxDepth: Maximum depth
+	 * @param maxFrontier: Most paths of the frontier that are kept, 0 to always restart
+	 * 
+	 * @return a list of connecting nodes from the start node to the goal node
+	 */
+	public List<UUSearchNode> IDSearch(int maxDepth, int maxFrontier) {
 		resetStats();
-		
-		for (int i = 0; i < maxDepth; i++) {
-			HashSet<UUSearchNode> currentPath = new HashSet<UUSearchNode>();
-			
-			List<UUSearchNode> nodeList = dfsrpc(startNode, currentPath, 0, i);
-			
-			if (nodeList != null) {
-				return nodeList;
+
+		DepthLimitedSearch search = new DepthLimitedSearch(maxFrontier);
+		ArrayList<PathLink> frontier = null;
+
+		for (int limit = 0; limit <= maxDepth; limit++) {
+			int nodesBefore = nodesExplored;
+			search.startIteration(limit);
+
+			PathLink goal = null;
+
+			if (frontier == null) {
+				goal = search.dfs();
+			} else {
+				for (int i = 0; i < frontier.size() && goal == null; i++) {
+					goal = search.expand(frontier.get(i));
+				}
 			}
+
+			iterationNodesExplored.add(nodesExplored - nodesBefore);
+
+			if (goal != null) {
+				return goal.toNodeList();
+			}
+
+			// Without a cutoff, every path was followed to its end
+			if (!search.cutoff) {
+				return null;
+			}
+
+			frontier = search.frontier;
 		}
 		
 		return null;
 	}
 
+	/**
+	 * A node on a path of the iterative deepening frontier, linked to the
+	 * node before it, so that the paths share their common starts.
+	 */
+	private static class PathLink {
+		private final UUSearchNode node;
+		private final PathLink parent;
+
+		PathLink(UUSearchNode node, PathLink parent) {
+			this.node = node;
+			this.parent = parent;
+		}
+
+		boolean contains(UUSearchNode other) {
+			for (PathLink link = this; link != null; link = link.parent) {
+				if (link.node.equals(other)) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		List<UUSearchNode> toNodeList() {
+			List<UUSearchNode> nodeList = new LinkedList<UUSearchNode>();
+			for (PathLink link = this; link != null; link = link.parent) {
+				nodeList.add(0, link.node);
+			}
+			return nodeList;
+		}
+	}
+
+	/**
+	 * One iteration of iterative deepening: records whether the limit cut
+	 * off any path, and the paths that reach the limit while there are few
+	 * enough of them.
+	 */
+	private class DepthLimitedSearch {
+		private final int maxFrontier;
+		private int limit;
+		private boolean cutoff;
+		private ArrayList<PathLink> frontier;
+
+		DepthLimitedSearch(int maxFrontier) {
+			this.maxFrontier = maxFrontier;
+		}
+
+		void startIteration(int limit) {
+			this.limit = limit;
+			cutoff = false;
+			frontier = maxFrontier > 0 ? new ArrayList<PathLink>() : null;
+		}
+
+		/**
+		 * Path-checking DFS like depthFirstPathCheckingSearch, from the start
+		 * node to the limit, on an explicit stack. The nodes at the limit are
+		 * tested but not pushed, since their successors are not searched.
+		 * 
+		 * @return the path to the goal, or null if it is not found
+		 */
+		PathLink dfs() {
+			HashSet<UUSearchNode> currentPath = new HashSet<UUSearchNode>();
+			NodeStack stack = new NodeStack();
+			// The path of every node on the stack, indexed by depth
+			PathLink[] paths = new PathLink[16];
+
+			PathLink startPath = new PathLink(startNode, null);
+			if (visit(startPath, currentPath, 0)) {
+				return startPath;
+			}
+			if (limit == 0) {
+				return null;
+			}
+
+			currentPath.add(startNode);
+			stack.push(startNode);
+			paths[0] = startPath;
+
+			while (!stack.isEmpty()) {
+				int depth = stack.getDepth();
+				UUSearchNode successor = stack.nextSuccessor();
+
+				if (successor == null) {
+					currentPath.remove(stack.pop());
+					paths[depth] = null;
+					continue;
+				}
+
+				if (currentPath.contains(successor)) {
+					continue;
+				}
+
+				PathLink successorPath = new PathLink(successor, paths[depth]);
+				if (visit(successorPath, currentPath, depth + 1)) {
+					return successorPath;
+				}
+
+				if (depth + 1 < limit) {
+					currentPath.add(successor);
+					stack.push(successor);
+
+					if (depth + 1 == paths.length) {
+						paths = Arrays.copyOf(paths, paths.length * 2);
+					}
+					paths[depth + 1] = successorPath;
+				}
+			}
+			return null;
+		}
+
+		/**
+		 * Update the stats for a node that is searched, and record a cutoff
+		 * if it is at the limit.
+		 * 
+		 * @param currentPath: The nodes of the path before the node
+		 * 
+		 * @return whether the node is a goal node
+		 */
+		private boolean visit(PathLink path, HashSet<UUSearchNode> currentPath, int depth) {
+			updateMemory(currentPath.size() + 1);
+			incrementNodeCount();
+
+			if (path.node.goalTest()) {
+				return true;
+			}
+
+			if (depth == limit) {
+				reachLimit(path);
+			}
+			return false;
+		}
+
+		/**
+		 * Explore the successors of a frontier path of the previous
+		 * iteration, which end at the new limit.
+		 * 
+		 * @return the path to the goal, or null if it is not found
+		 */
+		PathLink expand(PathLink path) {
+			for (UUSearchNode successor : path.node.getSuccessors()) {
+				if (path.contains(successor)) {
+					continue;
+				}
+
+				PathLink successorPath = new PathLink(successor, path);
+				incrementNodeCount();
+
+				if (successor.goalTest()) {
+					return successorPath;
+				}
+
+				reachLimit(successorPath);
+			}
+			return null;
+		}
+
+		/**
+		 * A path that reaches the limit is cut off, and is kept for the next
+		 * iteration while the frontier is small enough.
+		 */
+		private void reachLimit(PathLink path) {
+			cutoff = true;
+
+			if (frontier != null) {
+				if (frontier.size() < maxFrontier) {
+					frontier.add(path);
+					updateMemory(frontier.size() + limit);
+				} else {
+					frontier = null;
+				}
+			}
+		}
+	}
+
 	protected void resetStats() {
 		nodesExplored = 0;
 		maxMemory = 0;
+		iterationNodesExplored.clear();
 	}
 	
 	protected void printStats() {
 		System.out.println("Nodes explored during last search:  " + nodesExplored);
 		System.out.println("Maximum memory usage during last search " + maxMemory);
+
+		if (!iterationNodesExplored.isEmpty()) {
+			System.out.println("Nodes explored per iteration: " + iterationNodesExplored);
+		}
 	}
 	
 	protected void updateMemory(int currentMemory) {
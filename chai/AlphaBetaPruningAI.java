@@ -3,7 +3,16 @@ package chai;
 public class AlphaBetaPruningAI extends MinimaxAI {
 	
 	public AlphaBetaPruningAI(int player, int maximumDepth, boolean transpositionTableEnabled) {
-		super(player, maximumDepth, true, transpositionTableEnabled);
+		super(player, maximumDepth, SearchStrategy.PRINCIPAL_VARIATION, transpositionTableEnabled);
+	}
+	
+	public AlphaBetaPruningAI(int player, int maximumDepth, TranspositionTable transpositionTable) {
+		super(player, maximumDepth, SearchStrategy.PRINCIPAL_VARIATION, transpositionTable);
+	}
+	
+	public AlphaBetaPruningAI(int player, int maximumDepth, TranspositionTable transpositionTable,
+			SearchOptions options) {
+		super(player, maximumDepth, SearchStrategy.PRINCIPAL_VARIATION, transpositionTable, options);
 	}
 	
 }
@@ -0,0 +1,195 @@
+package chai;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+
+import chesspresso.position.Position;
+
+/**
+ * Benchmarks of the chess engine: perft over standard test positions, and
+ * fixed-depth searches of MinimaxAI and AlphaBetaPruningAI with and without
+ * the transposition table. Each benchmark is run a few times to warm up the
+ * JIT before it is measured, and reports nodes per second and the bytes
+ * allocated per node. The boards suite runs the same alpha-beta search on
+ * ChesspressoBoard and BitboardPosition and compares their speed.
+ *
+ * The process exits with status 1 if a perft count is wrong, so the
+ * benchmark can gate engine changes.
+ *
+ * Usage: Benchmark [perft|search|boards|all] [iterations]
+ */
+public class Benchmark {
+
+	private static final int WARMUP_ITERATIONS = 2;
+
+	private static final int DEFAULT_ITERATIONS = 5;
+
+	// depth of the comparison of the boards
+	private static final int BOARD_DEPTH = 7;
+
+	// position, depth and the known perft count
+	private static final Object[][] PERFT_POSITIONS = {
+			{ "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1", 4, 197281L },
+			{ "r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1", 3, 97862L },
+			{ "8/2p5/3p4/KP5r/1R3p1k/8/4P1P1/8 w - - 0 1", 5, 674624L },
+			{ "r3k2r/Pppp1ppp/1b3nbN/nP6/BBP1P3/q4N2/Pp1P2PP/R2Q1RK1 w kq - 0 1", 4, 422333L },
+			{ "rnbq1k1r/pp1Pbppp/2p5/8/2B5/8/PPP1NnPP/RNBQK2R w KQ - 1 8", 3, 62379L } };
+
+	private static final String[] SEARCH_POSITIONS = {
+			"rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1",
+			"r1bqkbnr/pppp1ppp/2n5/1B2p3/4P3/5N2/PPPP1PPP/RNBQK2R b KQkq - 3 3",
+			"r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1",
+			"8/2p5/3p4/KP5r/1R3p1k/8/4P1P1/8 w - - 0 1" };
+
+	private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+	public static void main(String[] args) {
+		String suite = args.length > 0 ? args[0] : "all";
+		int iterations = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_ITERATIONS;
+
+		boolean correct = true;
+
+		if (suite.equals("perft") || suite.equals("all")) {
+			correct = runPerft("perft", iterations, null);
+			correct &= runPerft("perft bitboard", iterations, BitboardPosition::new);
+		}
+
+		if (suite.equals("search") || suite.equals("all")) {
+			runSearch("MinimaxAI", 4, iterations,
+					player -> new MinimaxAI(player, 4, false));
+			runSearch("MinimaxAI+TT", 4, iterations,
+					player -> new MinimaxAI(player, 4, true));
+			runSearch("AlphaBetaPruningAI", 6, iterations,
+					player -> new AlphaBetaPruningAI(player, 6, false));
+			runSearch("AlphaBetaPruningAI+TT", 6, iterations,
+					player -> new AlphaBetaPruningAI(player, 6, true));
+			runSearch("AlphaBetaPruningAI+TT+CB", 6, iterations, player -> {
+				MinimaxAI ai = new AlphaBetaPruningAI(player, 6, true);
+				ai.setBoard(ChesspressoBoard::new);
+				return ai;
+			});
+		}
+
+		if (suite.equals("boards") || suite.equals("all")) {
+			double chesspresso = runSearch("ChesspressoBoard", BOARD_DEPTH, iterations, player -> {
+				MinimaxAI ai = new AlphaBetaPruningAI(player, BOARD_DEPTH, true);
+				ai.setBoard(ChesspressoBoard::new);
+				return ai;
+			});
+			double bitboard = runSearch("BitboardPosition", BOARD_DEPTH, iterations, player -> {
+				MinimaxAI ai = new AlphaBetaPruningAI(player, BOARD_DEPTH, true);
+				ai.setBoard(BitboardPosition::new);
+				return ai;
+			});
+
+			System.out.println();
+			System.out.println(String.format("BitboardPosition: %.2f times the nodes per second of ChesspressoBoard",
+					bitboard / chesspresso));
+		}
+
+		if (!correct) {
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * @param boardFactory: Board to count on, or null for a chesspresso Position
+	 *
+	 * @return whether every perft count was right
+	 */
+	private static boolean runPerft(String name, int iterations, Function<Position, Board> boardFactory) {
+		boolean correct = true;
+
+		System.out.println();
+		System.out.println(String.format("%-14s depth        nodes   ms/op   Mnps  bytes/node  position", name));
+
+		for (Object[] perftPosition : PERFT_POSITIONS) {
+			String fen = (String) perftPosition[0];
+			int depth = (Integer) perftPosition[1];
+			long expected = (Long) perftPosition[2];
+
+			Position position = new Position(fen);
+			Board board = boardFactory != null ? boardFactory.apply(position) : null;
+			long nodes = 0;
+			long time = 0;
+			long bytes = 0;
+
+			for (int i = 0; i < WARMUP_ITERATIONS + iterations; i++) {
+				long startBytes = getAllocatedBytes();
+				long startTime = System.nanoTime();
+
+				nodes = board != null ? Perft.perft(board, depth) : Perft.perft(position, depth);
+
+				if (i >= WARMUP_ITERATIONS) {
+					time += System.nanoTime() - startTime;
+					bytes += getAllocatedBytes() - startBytes;
+				}
+			}
+
+			String result = nodes == expected ? "ok" : "WRONG, expected " + expected;
+			correct &= nodes == expected;
+
+			print(result, depth, nodes, time, bytes, iterations, fen);
+		}
+
+		return correct;
+	}
+
+	/**
+	 * @return the nodes per second over all positions
+	 */
+	private static double runSearch(String name, int depth, int iterations, IntFunction<MinimaxAI> factory) {
+		System.out.println();
+		System.out.println(String.format("%-14s depth        nodes   ms/op   Mnps  bytes/node  position", name));
+
+		long totalNodes = 0;
+		long totalTime = 0;
+
+		for (String fen : SEARCH_POSITIONS) {
+			long nodes = 0;
+			long time = 0;
+			long bytes = 0;
+
+			for (int i = 0; i < WARMUP_ITERATIONS + iterations; i++) {
+				Position position = new Position(fen);
+
+				// a new AI for every run, so the transposition table starts empty
+				MinimaxAI ai = factory.apply(position.getToPlay());
+
+				long startBytes = getAllocatedBytes();
+				long startTime = System.nanoTime();
+
+				ai.getMove(position);
+
+				if (i >= WARMUP_ITERATIONS) {
+					time += System.nanoTime() - startTime;
+					bytes += getAllocatedBytes() - startBytes;
+					nodes += ai.getVisitedPositions() + ai.getQuiescencePositions();
+				}
+			}
+
+			print("", depth, nodes / iterations, time, bytes, iterations, fen);
+
+			totalNodes += nodes;
+			totalTime += time;
+		}
+
+		return totalNodes / (totalTime / 1e9);
+	}
+
+	private static void print(String result, int depth, long nodes, long time, long bytes, int iterations,
+			String fen) {
+		double millisPerOperation = time / 1e6 / iterations;
+		double megaNodesPerSecond = nodes * iterations / (time / 1e3);
+		long bytesPerNode = bytes / Math.max(1, nodes * iterations);
+
+		System.out.println(String.format("%-14s %5d %12d %7.1f %6.2f %11d  %s",
+				result, depth, nodes, millisPerOperation, megaNodesPerSecond, bytesPerNode, fen));
+	}
+
+	private static long getAllocatedBytes() {
+		return ((com.sun.management.ThreadMXBean) THREADS).getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+}
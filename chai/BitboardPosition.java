@@ -0,0 +1,937 @@
+package chai;
+
+import java.util.Arrays;
+
+import chesspresso.Chess;
+import chesspresso.move.IllegalMoveException;
+import chesspresso.move.Move;
+import chesspresso.position.AbstractPosition;
+import chesspresso.position.ImmutablePosition;
+import chesspresso.position.Position;
+
+/**
+ * A Board of 64-bit bitboards, one for every stone and color, next to a
+ * square-indexed array of the stones. Sliding attacks are looked up in
+ * magic bitboard tables, legal moves are generated directly (with pins
+ * and check evasions instead of making every move), the hash code is
+ * updated incrementally with chesspresso's Zobrist keys, and moves are
+ * made and taken back on preallocated stacks, so nothing is allocated
+ * per node.
+ *
+ * Bit i of a bitboard is chesspresso square i, i.e. A1 is bit 0 and H8 bit 63.
+ */
+public class BitboardPosition implements Board {
+
+	// A1, B1, ... H1 of each color
+	private static final int[] FIRST_ROWS = { Chess.A1, Chess.A8 };
+
+	private static final long FILE_A = 0x0101010101010101L;
+
+	private static final long FILE_H = 0x8080808080808080L;
+
+	// the squares a pawn of each color reaches with the first step of a double step
+	private static final long[] DOUBLE_PUSH_ROWS = { 0xFFL << 16, 0xFFL << 40 };
+
+	// castles that remain possible after a move from or to the square
+	private static final int[] CASTLE_MASKS = new int[Chess.NUM_OF_SQUARES];
+
+	// material values as counted by Position.getMaterial, indexed by piece
+	private static final int[] MATERIAL = { 0, 300, 325, 500, 900, 100, 0 };
+
+	// FEN letters of the black pieces, indexed by piece
+	private static final String PIECE_CHARS = " nbrqpk";
+
+	private static final int[][] ROOK_DIRECTIONS = { { 1, 0 }, { -1, 0 }, { 0, 1 }, { 0, -1 } };
+
+	private static final int[][] BISHOP_DIRECTIONS = { { 1, 1 }, { 1, -1 }, { -1, 1 }, { -1, -1 } };
+
+	private static final int[][] KNIGHT_STEPS = { { 1, 2 }, { 2, 1 }, { 2, -1 }, { 1, -2 }, { -1, -2 }, { -2, -1 },
+			{ -2, 1 }, { -1, 2 } };
+
+	private static final long[] KNIGHT_ATTACKS = new long[Chess.NUM_OF_SQUARES];
+
+	private static final long[] KING_ATTACKS = new long[Chess.NUM_OF_SQUARES];
+
+	// squares attacked by a pawn of the color on the square
+	private static final long[][] PAWN_ATTACKS = new long[2][Chess.NUM_OF_SQUARES];
+
+	// attacks of rooks and bishops on an empty board
+	private static final long[] ROOK_RAYS = new long[Chess.NUM_OF_SQUARES];
+
+	private static final long[] BISHOP_RAYS = new long[Chess.NUM_OF_SQUARES];
+
+	// squares strictly between two squares on a line, and the whole line through both
+	private static final long[][] BETWEEN = new long[Chess.NUM_OF_SQUARES][Chess.NUM_OF_SQUARES];
+
+	private static final long[][] LINE = new long[Chess.NUM_OF_SQUARES][Chess.NUM_OF_SQUARES];
+
+	// Magic bitboards: the relevant occupancy of a square times its magic,
+	// shifted right, indexes the attacks of the square in one table. The
+	// magics were found by trial with random sparse numbers, each one
+	// mapping all occupancies of its square without harmful collisions
+	private static final long[] ROOK_MAGICS = {
+			0x1C80002080104000L, 0x6080108040002000L, 0x2100200100401008L, 0x0480040800100080L,
+			0x0280020800802400L, 0x0900040002810008L, 0x0080008001000200L, 0x2200002100840052L,
+			0xB200800090204000L, 0x0021400020100040L, 0x0001001100200842L, 0x0001000810010020L,
+			0x045A0020050A0010L, 0x800A000850020004L, 0x0504000208010410L, 0x0007000043820500L,
+			0x9020228008400480L, 0x909000C000402001L, 0x2000110020004100L, 0x0022420022000810L,
+			0x0000808004000800L, 0x0000808004000200L, 0x0080040030015208L, 0x8C06B20000904401L,
+			0x8000800080204002L, 0x4001004200220090L, 0x4812002600108440L, 0x00002101000C1001L,
+			0x1420040280080080L, 0x0000040801102040L, 0x0A41080400708201L, 0x0204008200004124L,
+			0x1020004000808000L, 0x0228201000404000L, 0x0120001000808020L, 0x0080100025000900L,
+			0x0A40800400800800L, 0x0000020080800400L, 0x0111800200800100L, 0x8400008506000864L,
+			0x0000800041010020L, 0xA000500020044000L, 0x0000200100110040L, 0x4004220040120008L,
+			0x0108050801010010L, 0x0200020004008080L, 0x0000010248040010L, 0x4020010060820004L,
+			0x0200401080002880L, 0x1A010A40220C8200L, 0x1004102009004100L, 0x20C2018840A01200L,
+			0x0410110008000500L, 0x0204008004020080L, 0x0000902821020400L, 0x0001000080420100L,
+			0x8040410080002011L, 0x080880201100400DL, 0x0C10401420000901L, 0x0212440920100101L,
+			0x3002000420100802L, 0x2001005228440041L, 0x04C4009210082104L, 0x0028004400802102L };
+
+	private static final long[] BISHOP_MAGICS = {
+			0x001408100C027043L, 0x0028080094204280L, 0x00081200420CC414L, 0x0004041880803050L,
+			0x0004050410200002L, 0x0100821040140020L, 0x00040208020A4102L, 0x8410202808241004L,
+			0x00000920090C0900L, 0x0044204202104900L, 0x0024880800408800L, 0x0211280A00220810L,
+			0x0000811040000018L, 0x0800890120510084L, 0x18C0252108024005L, 0x0000088400880400L,
+			0x0090C10802500400L, 0x5104202004009200L, 0x0010000127002100L, 0x0002005028220013L,
+			0x0102010420210000L, 0x3282000101010100L, 0x0012004058341410L, 0x0000448201008820L,
+			0x0020101104040880L, 0x0024204402020420L, 0x0200240202081200L, 0x0002080004004008L,
+			0x4001001021004009L, 0x000C014000882000L, 0x0901120044008400L, 0x00010608010C4100L,
+			0x0010084641881000L, 0x2000821020200400L, 0x0024002400180040L, 0x1801008080080204L,
+			0x00C0008020520020L, 0x4002104200010084L, 0x01010E4400408400L, 0x8002020200403080L,
+			0x0204100848404401L, 0x1821012820248272L, 0x8402001444020810L, 0x2404004200810800L,
+			0x0800080214000810L, 0x0214044084090600L, 0x0110020084080100L, 0x2822140102100020L,
+			0x0011042120880020L, 0x9000220110080200L, 0x8204842402680108L, 0x0004300020880400L,
+			0x00C0000425040040L, 0x841040632C010028L, 0x002020010A00A800L, 0x0804012A24010000L,
+			0x0404C508028A2008L, 0x0020004412084288L, 0x0242000080480800L, 0x2001040410840400L,
+			0x00002000209E5400L, 0x8830888510020204L, 0x0200404401444100L, 0x0808101026002220L };
+
+	private static final long[] ROOK_MASKS = new long[Chess.NUM_OF_SQUARES];
+
+	private static final int[] ROOK_SHIFTS = new int[Chess.NUM_OF_SQUARES];
+
+	private static final int[] ROOK_OFFSETS = new int[Chess.NUM_OF_SQUARES];
+
+	private static final long[] ROOK_ATTACKS;
+
+	private static final long[] BISHOP_MASKS = new long[Chess.NUM_OF_SQUARES];
+
+	private static final int[] BISHOP_SHIFTS = new int[Chess.NUM_OF_SQUARES];
+
+	private static final int[] BISHOP_OFFSETS = new int[Chess.NUM_OF_SQUARES];
+
+	private static final long[] BISHOP_ATTACKS;
+
+	static {
+		Arrays.fill(CASTLE_MASKS, ImmutablePosition.ALL_CASTLES);
+		CASTLE_MASKS[Chess.A1] &= ~ImmutablePosition.WHITE_LONG_CASTLE;
+		CASTLE_MASKS[Chess.E1] &= ~ImmutablePosition.WHITE_CASTLE;
+		CASTLE_MASKS[Chess.H1] &= ~ImmutablePosition.WHITE_SHORT_CASTLE;
+		CASTLE_MASKS[Chess.A8] &= ~ImmutablePosition.BLACK_LONG_CASTLE;
+		CASTLE_MASKS[Chess.E8] &= ~ImmutablePosition.BLACK_CASTLE;
+		CASTLE_MASKS[Chess.H8] &= ~ImmutablePosition.BLACK_SHORT_CASTLE;
+
+		for (int sqi = 0; sqi < Chess.NUM_OF_SQUARES; sqi++) {
+			int col = Chess.sqiToCol(sqi);
+			int row = Chess.sqiToRow(sqi);
+
+			for (int[] step : KNIGHT_STEPS) {
+				KNIGHT_ATTACKS[sqi] |= getBit(col + step[0], row + step[1]);
+			}
+			for (int dc = -1; dc <= 1; dc++) {
+				for (int dr = -1; dr <= 1; dr++) {
+					if (dc != 0 || dr != 0) {
+						KING_ATTACKS[sqi] |= getBit(col + dc, row + dr);
+					}
+				}
+			}
+			PAWN_ATTACKS[Chess.WHITE][sqi] = getBit(col - 1, row + 1) | getBit(col + 1, row + 1);
+			PAWN_ATTACKS[Chess.BLACK][sqi] = getBit(col - 1, row - 1) | getBit(col + 1, row - 1);
+
+			ROOK_RAYS[sqi] = getSlidingAttacks(sqi, 0, ROOK_DIRECTIONS);
+			BISHOP_RAYS[sqi] = getSlidingAttacks(sqi, 0, BISHOP_DIRECTIONS);
+		}
+
+		for (int a = 0; a < Chess.NUM_OF_SQUARES; a++) {
+			for (int b = 0; b < Chess.NUM_OF_SQUARES; b++) {
+				int[][] directions = (ROOK_RAYS[a] & 1L << b) != 0 ? ROOK_DIRECTIONS
+						: (BISHOP_RAYS[a] & 1L << b) != 0 ? BISHOP_DIRECTIONS : null;
+				if (directions != null) {
+					BETWEEN[a][b] = getSlidingAttacks(a, 1L << b, directions) & getSlidingAttacks(b, 1L << a, directions);
+					LINE[a][b] = getSlidingAttacks(a, 0, directions) & getSlidingAttacks(b, 0, directions)
+							| 1L << a | 1L << b;
+				}
+			}
+		}
+
+		ROOK_ATTACKS = getAttackTable(ROOK_DIRECTIONS, ROOK_MAGICS, ROOK_MASKS, ROOK_SHIFTS, ROOK_OFFSETS);
+		BISHOP_ATTACKS = getAttackTable(BISHOP_DIRECTIONS, BISHOP_MAGICS, BISHOP_MASKS, BISHOP_SHIFTS, BISHOP_OFFSETS);
+	}
+
+	/**
+	 * chesspresso's Zobrist keys, which are only accessible to subclasses of AbstractPosition.
+	 */
+	private static abstract class ZobristKeys extends AbstractPosition {
+
+		// indexed by square and stone + 6
+		static final long[][] STONES = s_hashMod;
+
+		// indexed by the castles
+		static final long[] CASTLES = s_hashCastleMod;
+
+		// indexed by the column of the en passant square
+		static final long[] EN_PASSANT = s_hashEPMod;
+
+		// a bit that none of the other keys has
+		static final long BLACK_TO_PLAY = HASH_TOPLAY_MULT;
+	}
+
+	// the stones of each color, indexed by stone + 6
+	private final long[] bitboards = new long[13];
+
+	private final long[] colors = new long[2];
+
+	private long occupied = 0;
+
+	private final int[] stones = new int[Chess.NUM_OF_SQUARES];
+
+	private int toPlay;
+
+	private int castles;
+
+	private int sqiEP;
+
+	private int halfMoveClock;
+
+	private int plyNumber;
+
+	// the hash code of the stones alone
+	private long stoneHash = 0;
+
+	// state before each move that has been made, to take it back
+	private short[] moveStack = new short[MoveOrderer.MAX_PLY];
+
+	private int[] capturedStack = new int[MoveOrderer.MAX_PLY];
+
+	private int[] castlesStack = new int[MoveOrderer.MAX_PLY];
+
+	private int[] epStack = new int[MoveOrderer.MAX_PLY];
+
+	private int[] clockStack = new int[MoveOrderer.MAX_PLY];
+
+	private long[] hashStack = new long[MoveOrderer.MAX_PLY];
+
+	private int stackSize = 0;
+
+	// pawn moves generated only to see whether there are any
+	private final short[] scratchMoves = new short[MoveOrderer.MAX_MOVES];
+
+	public BitboardPosition(ImmutablePosition position) {
+		for (int sqi = 0; sqi < Chess.NUM_OF_SQUARES; sqi++) {
+			int stone = position.getStone(sqi);
+			if (stone != Chess.NO_STONE) {
+				put(sqi, stone);
+			}
+		}
+
+		toPlay = position.getToPlay();
+		castles = position.getCastles();
+		sqiEP = position.getSqiEP();
+		halfMoveClock = position.getHalfMoveClock();
+		plyNumber = position.getPlyNumber();
+	}
+
+	public BitboardPosition(String fen) {
+		this(new Position(fen));
+	}
+
+	@Override
+	public int getToPlay() {
+		return toPlay;
+	}
+
+	/**
+	 * @return the hash code computed like Position.getHashCode, which only
+	 * counts the en passant square if a pawn can actually capture there
+	 * (see Board about castles)
+	 */
+	@Override
+	public long getHashCode() {
+		long hashCode = stoneHash ^ ZobristKeys.CASTLES[castles];
+
+		if (sqiEP != Chess.NO_SQUARE) {
+			// the capturing pawn stands beside the pawn that has just moved
+			int col = Chess.sqiToCol(sqiEP);
+			int row = sqiEP < Chess.A4 ? 3 : 4;
+			long pawns = bitboards[(sqiEP < Chess.A4 ? Chess.BLACK_PAWN : Chess.WHITE_PAWN) + 6];
+			if ((pawns & (getBit(col - 1, row) | getBit(col + 1, row))) != 0) {
+				hashCode ^= ZobristKeys.EN_PASSANT[col];
+			}
+		}
+
+		if (toPlay == Chess.BLACK) {
+			hashCode |= ZobristKeys.BLACK_TO_PLAY;
+		}
+		return hashCode;
+	}
+
+	@Override
+	public int getStone(int sqi) {
+		return stones[sqi];
+	}
+
+	@Override
+	public int getPiece(int sqi) {
+		return Math.abs(stones[sqi]);
+	}
+
+	@Override
+	public int getColor(int sqi) {
+		int stone = stones[sqi];
+		return stone < 0 ? Chess.WHITE : stone > 0 ? Chess.BLACK : Chess.NOBODY;
+	}
+
+	@Override
+	public int getCastles() {
+		return castles;
+	}
+
+	@Override
+	public int getSqiEP() {
+		return sqiEP;
+	}
+
+	@Override
+	public int getHalfMoveClock() {
+		return halfMoveClock;
+	}
+
+	@Override
+	public int getPlyNumber() {
+		return plyNumber;
+	}
+
+	@Override
+	public int getMaterial() {
+		int material = 0;
+		for (int piece = Chess.KNIGHT; piece <= Chess.PAWN; piece++) {
+			material += MATERIAL[piece] * (Long.bitCount(bitboards[6 - piece]) - Long.bitCount(bitboards[6 + piece]));
+		}
+		return toPlay == Chess.WHITE ? material : -material;
+	}
+
+	@Override
+	public boolean isCheck() {
+		return getAttackers(getKingSqi(toPlay), 1 - toPlay, occupied) != 0;
+	}
+
+	@Override
+	public boolean isMate() {
+		return isCheck() && !canMove();
+	}
+
+	@Override
+	public boolean isStaleMate() {
+		return !isCheck() && !canMove();
+	}
+
+	@Override
+	public boolean isTerminal() {
+		return halfMoveClock >= 100 || !canMove();
+	}
+
+	/**
+	 * The search asks this at every node, so unlike getMoves it stops at
+	 * the first legal move it finds, and tries the king and the pieces
+	 * before the pawns. Castling needs no test: whenever it is legal, so is
+	 * the step of the king towards the rook.
+	 *
+	 * @return whether the side to move has a legal move
+	 */
+	private boolean canMove() {
+		int us = toPlay;
+		int them = 1 - us;
+		int kingSqi = getKingSqi(us);
+
+		long occupiedWithoutKing = occupied ^ 1L << kingSqi;
+		for (long targets = KING_ATTACKS[kingSqi] & ~colors[us]; targets != 0; targets &= targets - 1) {
+			if (getAttackers(Long.numberOfTrailingZeros(targets), them, occupiedWithoutKing) == 0) {
+				return true;
+			}
+		}
+
+		long checkers = getAttackers(kingSqi, them, occupied);
+		if (Long.bitCount(checkers) > 1) {
+			return false;
+		}
+
+		long targetMask = checkers == 0 ? ~colors[us]
+				: checkers | BETWEEN[kingSqi][Long.numberOfTrailingZeros(checkers)];
+		long pinned = getPinned(kingSqi, us);
+
+		for (long pieces = bitboards[getIndex(us, Chess.KNIGHT)] & ~pinned; pieces != 0; pieces &= pieces - 1) {
+			if ((KNIGHT_ATTACKS[Long.numberOfTrailingZeros(pieces)] & targetMask) != 0) {
+				return true;
+			}
+		}
+
+		long queens = bitboards[getIndex(us, Chess.QUEEN)];
+
+		for (long pieces = bitboards[getIndex(us, Chess.BISHOP)] | queens; pieces != 0; pieces &= pieces - 1) {
+			int fromSqi = Long.numberOfTrailingZeros(pieces);
+			long targets = getBishopAttacks(fromSqi, occupied) & targetMask;
+			if ((pinned & 1L << fromSqi) != 0) {
+				targets &= LINE[kingSqi][fromSqi];
+			}
+			if (targets != 0) {
+				return true;
+			}
+		}
+
+		for (long pieces = bitboards[getIndex(us, Chess.ROOK)] | queens; pieces != 0; pieces &= pieces - 1) {
+			int fromSqi = Long.numberOfTrailingZeros(pieces);
+			long targets = getRookAttacks(fromSqi, occupied) & targetMask;
+			if ((pinned & 1L << fromSqi) != 0) {
+				targets &= LINE[kingSqi][fromSqi];
+			}
+			if (targets != 0) {
+				return true;
+			}
+		}
+
+		return addPawnMoves(scratchMoves, 0, us, kingSqi, targetMask, pinned) > 0;
+	}
+
+	@Override
+	public int getMoves(short[] moves) {
+		int us = toPlay;
+		int them = 1 - us;
+		long own = colors[us];
+		long enemies = colors[them];
+		int kingSqi = getKingSqi(us);
+		long checkers = getAttackers(kingSqi, them, occupied);
+
+		int count = 0;
+
+		// the king must not stay on the line of a slider it moves away from
+		long occupiedWithoutKing = occupied ^ 1L << kingSqi;
+		for (long targets = KING_ATTACKS[kingSqi] & ~own; targets != 0; targets &= targets - 1) {
+			int toSqi = Long.numberOfTrailingZeros(targets);
+			if (getAttackers(toSqi, them, occupiedWithoutKing) == 0) {
+				moves[count++] = Move.getRegularMove(kingSqi, toSqi, (enemies & 1L << toSqi) != 0);
+			}
+		}
+
+		// in double check only the king can move
+		if (Long.bitCount(checkers) > 1) {
+			return count;
+		}
+
+		// in check, the other pieces must capture the checker or block the check
+		long targetMask = checkers == 0 ? ~own
+				: checkers | BETWEEN[kingSqi][Long.numberOfTrailingZeros(checkers)];
+		long pinned = getPinned(kingSqi, us);
+
+		if (checkers == 0) {
+			count = addCastles(moves, count, us);
+		}
+
+		// a pinned knight can never move
+		for (long pieces = bitboards[getIndex(us, Chess.KNIGHT)] & ~pinned; pieces != 0; pieces &= pieces - 1) {
+			int fromSqi = Long.numberOfTrailingZeros(pieces);
+			count = addMoves(moves, count, fromSqi, KNIGHT_ATTACKS[fromSqi] & targetMask, enemies);
+		}
+
+		long queens = bitboards[getIndex(us, Chess.QUEEN)];
+
+		for (long pieces = bitboards[getIndex(us, Chess.BISHOP)] | queens; pieces != 0; pieces &= pieces - 1) {
+			int fromSqi = Long.numberOfTrailingZeros(pieces);
+			long targets = getBishopAttacks(fromSqi, occupied) & targetMask;
+			if ((pinned & 1L << fromSqi) != 0) {
+				targets &= LINE[kingSqi][fromSqi];
+			}
+			count = addMoves(moves, count, fromSqi, targets, enemies);
+		}
+
+		for (long pieces = bitboards[getIndex(us, Chess.ROOK)] | queens; pieces != 0; pieces &= pieces - 1) {
+			int fromSqi = Long.numberOfTrailingZeros(pieces);
+			long targets = getRookAttacks(fromSqi, occupied) & targetMask;
+			if ((pinned & 1L << fromSqi) != 0) {
+				targets &= LINE[kingSqi][fromSqi];
+			}
+			count = addMoves(moves, count, fromSqi, targets, enemies);
+		}
+
+		return addPawnMoves(moves, count, us, kingSqi, targetMask, pinned);
+	}
+
+	private int addMoves(short[] moves, int count, int fromSqi, long targets, long enemies) {
+		for (; targets != 0; targets &= targets - 1) {
+			int toSqi = Long.numberOfTrailingZeros(targets);
+			moves[count++] = Move.getRegularMove(fromSqi, toSqi, (enemies & 1L << toSqi) != 0);
+		}
+		return count;
+	}
+
+	private int addCastles(short[] moves, int count, int us) {
+		int them = 1 - us;
+		int firstRow = FIRST_ROWS[us];
+		int rook = us == Chess.WHITE ? Chess.WHITE_ROOK : Chess.BLACK_ROOK;
+
+		int shortCastle = us == Chess.WHITE ? ImmutablePosition.WHITE_SHORT_CASTLE : ImmutablePosition.BLACK_SHORT_CASTLE;
+		if ((castles & shortCastle) != 0 && stones[firstRow + 7] == rook
+				&& (occupied & (3L << (firstRow + 5))) == 0
+				&& getAttackers(firstRow + 5, them, occupied) == 0
+				&& getAttackers(firstRow + 6, them, occupied) == 0) {
+			moves[count++] = Move.getShortCastle(us);
+		}
+
+		int longCastle = us == Chess.WHITE ? ImmutablePosition.WHITE_LONG_CASTLE : ImmutablePosition.BLACK_LONG_CASTLE;
+		if ((castles & longCastle) != 0 && stones[firstRow] == rook
+				&& (occupied & (7L << (firstRow + 1))) == 0
+				&& getAttackers(firstRow + 3, them, occupied) == 0
+				&& getAttackers(firstRow + 2, them, occupied) == 0) {
+			moves[count++] = Move.getLongCastle(us);
+		}
+
+		return count;
+	}
+
+	private int addPawnMoves(short[] moves, int count, int us, int kingSqi, long targetMask, long pinned) {
+		int them = 1 - us;
+		int forward = us == Chess.WHITE ? 8 : -8;
+		long pawns = bitboards[getIndex(us, Chess.PAWN)];
+		long enemies = colors[them];
+		long empty = ~occupied;
+
+		// Pawns that are not pinned move all at once by shifting their
+		// bitboard, and each target square gives back its pawn
+		long free = pawns & ~pinned;
+		long pushes = shift(free, forward) & empty;
+		long doublePushes = shift(pushes & DOUBLE_PUSH_ROWS[us], forward) & empty & targetMask;
+
+		count = addPawnMoves(moves, count, pushes & targetMask, forward, false);
+		for (; doublePushes != 0; doublePushes &= doublePushes - 1) {
+			int toSqi = Long.numberOfTrailingZeros(doublePushes);
+			moves[count++] = Move.getPawnMove(toSqi - 2 * forward, toSqi, false, Chess.NO_PIECE);
+		}
+		count = addPawnMoves(moves, count, shift(free & ~FILE_A, forward - 1) & enemies & targetMask,
+				forward - 1, true);
+		count = addPawnMoves(moves, count, shift(free & ~FILE_H, forward + 1) & enemies & targetMask,
+				forward + 1, true);
+
+		// a pinned pawn can only move along the line of the pin
+		for (long pieces = pawns & pinned; pieces != 0; pieces &= pieces - 1) {
+			int fromSqi = Long.numberOfTrailingZeros(pieces);
+			long mask = targetMask & LINE[kingSqi][fromSqi];
+
+			int toSqi = fromSqi + forward;
+			if (stones[toSqi] == Chess.NO_STONE) {
+				if ((mask & 1L << toSqi) != 0) {
+					count = addPawnMove(moves, count, fromSqi, toSqi, false);
+				}
+
+				int doubleSqi = toSqi + forward;
+				if ((DOUBLE_PUSH_ROWS[us] & 1L << toSqi) != 0 && stones[doubleSqi] == Chess.NO_STONE
+						&& (mask & 1L << doubleSqi) != 0) {
+					moves[count++] = Move.getPawnMove(fromSqi, doubleSqi, false, Chess.NO_PIECE);
+				}
+			}
+
+			for (long targets = PAWN_ATTACKS[us][fromSqi] & enemies & mask; targets != 0; targets &= targets - 1) {
+				count = addPawnMove(moves, count, fromSqi, Long.numberOfTrailingZeros(targets), true);
+			}
+		}
+
+		// Taking en passant removes two pawns from a line at once, which
+		// pins cannot describe, so see whether the king is attacked afterwards
+		if (sqiEP != Chess.NO_SQUARE) {
+			long captured = 1L << (sqiEP - forward);
+			for (long pieces = pawns & PAWN_ATTACKS[them][sqiEP]; pieces != 0; pieces &= pieces - 1) {
+				int fromSqi = Long.numberOfTrailingZeros(pieces);
+				long occupiedAfter = (occupied ^ 1L << fromSqi ^ captured) | 1L << sqiEP;
+				if ((getAttackers(kingSqi, them, occupiedAfter) & ~captured) == 0) {
+					moves[count++] = Move.getEPMove(fromSqi, sqiEP);
+				}
+			}
+		}
+
+		return count;
+	}
+
+	/**
+	 * Add the pawn moves to the target squares, each from the square the
+	 * given number of squares before it.
+	 */
+	private int addPawnMoves(short[] moves, int count, long targets, int step, boolean capturing) {
+		for (; targets != 0; targets &= targets - 1) {
+			int toSqi = Long.numberOfTrailingZeros(targets);
+			count = addPawnMove(moves, count, toSqi - step, toSqi, capturing);
+		}
+		return count;
+	}
+
+	private int addPawnMove(short[] moves, int count, int fromSqi, int toSqi, boolean capturing) {
+		int row = Chess.sqiToRow(toSqi);
+		if (row == 0 || row == 7) {
+			for (int piece = Chess.QUEEN; piece >= Chess.KNIGHT; piece--) {
+				moves[count++] = Move.getPawnMove(fromSqi, toSqi, capturing, piece);
+			}
+		} else {
+			moves[count++] = Move.getPawnMove(fromSqi, toSqi, capturing, Chess.NO_PIECE);
+		}
+		return count;
+	}
+
+	@Override
+	public void doMove(short move) throws IllegalMoveException {
+		int us = toPlay;
+
+		int captured = Chess.NO_STONE;
+
+		if (Move.isCastle(move)) {
+			push(move, captured);
+
+			int firstRow = FIRST_ROWS[us];
+			if (Move.isShortCastle(move)) {
+				moveStone(firstRow + 4, firstRow + 6);
+				moveStone(firstRow + 7, firstRow + 5);
+			} else {
+				moveStone(firstRow + 4, firstRow + 2);
+				moveStone(firstRow, firstRow + 3);
+			}
+
+			castles &= us == Chess.WHITE ? ~ImmutablePosition.WHITE_CASTLE : ~ImmutablePosition.BLACK_CASTLE;
+			sqiEP = Chess.NO_SQUARE;
+			halfMoveClock++;
+		} else {
+			int fromSqi = Move.getFromSqi(move);
+			int toSqi = Move.getToSqi(move);
+			int stone = stones[fromSqi];
+
+			if (move == Move.NO_MOVE || stone == Chess.NO_STONE || (stone < 0) != (us == Chess.WHITE)) {
+				throw new IllegalMoveException(move, "no stone of the side to move on the from square");
+			}
+
+			int capturedSqi = Move.isEPMove(move) ? toSqi - (us == Chess.WHITE ? 8 : -8) : toSqi;
+			captured = stones[capturedSqi];
+
+			push(move, captured);
+
+			if (captured != Chess.NO_STONE) {
+				remove(capturedSqi);
+			}
+			remove(fromSqi);
+			put(toSqi, Move.isPromotion(move) ? Chess.pieceToStone(Move.getPromotionPiece(move), us) : stone);
+
+			boolean pawnMove = Math.abs(stone) == Chess.PAWN;
+			halfMoveClock = pawnMove || captured != Chess.NO_STONE ? 0 : halfMoveClock + 1;
+			sqiEP = pawnMove && Math.abs(toSqi - fromSqi) == 16 ? (fromSqi + toSqi) / 2 : Chess.NO_SQUARE;
+			castles &= CASTLE_MASKS[fromSqi] & CASTLE_MASKS[toSqi];
+		}
+
+		toPlay = 1 - us;
+		plyNumber++;
+	}
+
+	@Override
+	public void undoMove() {
+		stackSize--;
+		short move = moveStack[stackSize];
+
+		int us = 1 - toPlay;
+		toPlay = us;
+		plyNumber--;
+
+		if (Move.isCastle(move)) {
+			int firstRow = FIRST_ROWS[us];
+			if (Move.isShortCastle(move)) {
+				moveStone(firstRow + 6, firstRow + 4);
+				moveStone(firstRow + 5, firstRow + 7);
+			} else {
+				moveStone(firstRow + 2, firstRow + 4);
+				moveStone(firstRow + 3, firstRow);
+			}
+		} else {
+			int fromSqi = Move.getFromSqi(move);
+			int toSqi = Move.getToSqi(move);
+			int stone = stones[toSqi];
+
+			remove(toSqi);
+			put(fromSqi, Move.isPromotion(move) ? Chess.pieceToStone(Chess.PAWN, us) : stone);
+
+			int captured = capturedStack[stackSize];
+			if (captured != Chess.NO_STONE) {
+				put(Move.isEPMove(move) ? toSqi - (us == Chess.WHITE ? 8 : -8) : toSqi, captured);
+			}
+		}
+
+		pop();
+	}
+
+	@Override
+	public short getLastShortMove() {
+		return stackSize > 0 ? moveStack[stackSize - 1] : Move.NO_MOVE;
+	}
+
+	@Override
+	public void doNullMove() {
+		push(Move.NO_MOVE, Chess.NO_STONE);
+		sqiEP = Chess.NO_SQUARE;
+		toPlay = 1 - toPlay;
+	}
+
+	@Override
+	public void undoNullMove() {
+		stackSize--;
+		toPlay = 1 - toPlay;
+		pop();
+	}
+
+	@Override
+	public String getFEN() {
+		StringBuilder fen = new StringBuilder();
+
+		for (int row = 7; row >= 0; row--) {
+			int empty = 0;
+			for (int col = 0; col < 8; col++) {
+				int stone = stones[Chess.coorToSqi(col, row)];
+				if (stone == Chess.NO_STONE) {
+					empty++;
+					continue;
+				}
+				if (empty > 0) {
+					fen.append(empty);
+					empty = 0;
+				}
+				char c = PIECE_CHARS.charAt(Math.abs(stone));
+				fen.append(stone < 0 ? Character.toUpperCase(c) : c);
+			}
+			if (empty > 0) {
+				fen.append(empty);
+			}
+			if (row > 0) {
+				fen.append('/');
+			}
+		}
+
+		fen.append(toPlay == Chess.WHITE ? " w " : " b ");
+
+		if (castles == ImmutablePosition.NO_CASTLES) {
+			fen.append('-');
+		} else {
+			if ((castles & ImmutablePosition.WHITE_SHORT_CASTLE) != 0) fen.append('K');
+			if ((castles & ImmutablePosition.WHITE_LONG_CASTLE) != 0) fen.append('Q');
+			if ((castles & ImmutablePosition.BLACK_SHORT_CASTLE) != 0) fen.append('k');
+			if ((castles & ImmutablePosition.BLACK_LONG_CASTLE) != 0) fen.append('q');
+		}
+
+		fen.append(' ').append(sqiEP == Chess.NO_SQUARE ? "-" : Chess.sqiToStr(sqiEP))
+				.append(' ').append(halfMoveClock)
+				.append(' ').append(plyNumber / 2 + 1);
+
+		return fen.toString();
+	}
+
+	@Override
+	public Position toPosition() {
+		return new Position(getFEN());
+	}
+
+	@Override
+	public String toString() {
+		return getFEN();
+	}
+
+	/**
+	 * Save the state a move changes, before it is made.
+	 */
+	private void push(short move, int captured) {
+		if (stackSize == moveStack.length) {
+			int capacity = 2 * stackSize;
+			moveStack = Arrays.copyOf(moveStack, capacity);
+			capturedStack = Arrays.copyOf(capturedStack, capacity);
+			castlesStack = Arrays.copyOf(castlesStack, capacity);
+			epStack = Arrays.copyOf(epStack, capacity);
+			clockStack = Arrays.copyOf(clockStack, capacity);
+			hashStack = Arrays.copyOf(hashStack, capacity);
+		}
+
+		moveStack[stackSize] = move;
+		capturedStack[stackSize] = captured;
+		castlesStack[stackSize] = castles;
+		epStack[stackSize] = sqiEP;
+		clockStack[stackSize] = halfMoveClock;
+		hashStack[stackSize] = stoneHash;
+		stackSize++;
+	}
+
+	/**
+	 * Restore the state of the move at the top of the stack, whose stones
+	 * have already been put back.
+	 */
+	private void pop() {
+		castles = castlesStack[stackSize];
+		sqiEP = epStack[stackSize];
+		halfMoveClock = clockStack[stackSize];
+		stoneHash = hashStack[stackSize];
+	}
+
+	private void put(int sqi, int stone) {
+		long bit = 1L << sqi;
+		bitboards[stone + 6] |= bit;
+		colors[stone < 0 ? Chess.WHITE : Chess.BLACK] |= bit;
+		occupied |= bit;
+		stones[sqi] = stone;
+		stoneHash ^= ZobristKeys.STONES[sqi][stone + 6];
+	}
+
+	private void remove(int sqi) {
+		int stone = stones[sqi];
+		long bit = 1L << sqi;
+		bitboards[stone + 6] &= ~bit;
+		colors[stone < 0 ? Chess.WHITE : Chess.BLACK] &= ~bit;
+		occupied &= ~bit;
+		stones[sqi] = Chess.NO_STONE;
+		stoneHash ^= ZobristKeys.STONES[sqi][stone + 6];
+	}
+
+	private void moveStone(int fromSqi, int toSqi) {
+		int stone = stones[fromSqi];
+		remove(fromSqi);
+		put(toSqi, stone);
+	}
+
+	private int getKingSqi(int color) {
+		return Long.numberOfTrailingZeros(bitboards[getIndex(color, Chess.KING)]);
+	}
+
+	/**
+	 * @return the stones of the color that attack the square, with sliders
+	 * seeing through everything not in occupied
+	 */
+	private long getAttackers(int sqi, int color, long occupied) {
+		return (KNIGHT_ATTACKS[sqi] & bitboards[getIndex(color, Chess.KNIGHT)])
+				| (KING_ATTACKS[sqi] & bitboards[getIndex(color, Chess.KING)])
+				| (PAWN_ATTACKS[1 - color][sqi] & bitboards[getIndex(color, Chess.PAWN)])
+				| (getBishopAttacks(sqi, occupied)
+						& (bitboards[getIndex(color, Chess.BISHOP)] | bitboards[getIndex(color, Chess.QUEEN)]))
+				| (getRookAttacks(sqi, occupied)
+						& (bitboards[getIndex(color, Chess.ROOK)] | bitboards[getIndex(color, Chess.QUEEN)]));
+	}
+
+	/**
+	 * @return the stones of the color that are the only piece between their
+	 * king and an enemy slider
+	 */
+	private long getPinned(int kingSqi, int color) {
+		int them = 1 - color;
+		long queens = bitboards[getIndex(them, Chess.QUEEN)];
+
+		// sliders that see the king through pieces of its own color only
+		long enemies = colors[them];
+		long snipers = (getRookAttacks(kingSqi, enemies) & (bitboards[getIndex(them, Chess.ROOK)] | queens))
+				| (getBishopAttacks(kingSqi, enemies) & (bitboards[getIndex(them, Chess.BISHOP)] | queens));
+
+		long pinned = 0;
+		for (; snipers != 0; snipers &= snipers - 1) {
+			long blockers = BETWEEN[kingSqi][Long.numberOfTrailingZeros(snipers)] & occupied;
+			if (blockers != 0 && (blockers & (blockers - 1)) == 0) {
+				pinned |= blockers & colors[color];
+			}
+		}
+		return pinned;
+	}
+
+	/**
+	 * @return the bits moved towards H8 by a positive number of squares, or towards A1 by a negative one
+	 */
+	private static long shift(long bits, int squares) {
+		return squares > 0 ? bits << squares : bits >>> -squares;
+	}
+
+	private static int getIndex(int color, int piece) {
+		return color == Chess.WHITE ? 6 - piece : 6 + piece;
+	}
+
+	static long getRookAttacks(int sqi, long occupied) {
+		return ROOK_ATTACKS[ROOK_OFFSETS[sqi]
+				+ (int) (((occupied & ROOK_MASKS[sqi]) * ROOK_MAGICS[sqi]) >>> ROOK_SHIFTS[sqi])];
+	}
+
+	static long getBishopAttacks(int sqi, long occupied) {
+		return BISHOP_ATTACKS[BISHOP_OFFSETS[sqi]
+				+ (int) (((occupied & BISHOP_MASKS[sqi]) * BISHOP_MAGICS[sqi]) >>> BISHOP_SHIFTS[sqi])];
+	}
+
+	/**
+	 * @return the bit of the square, or 0 if the coordinates are off the board
+	 */
+	private static long getBit(int col, int row) {
+		return col >= 0 && col < 8 && row >= 0 && row < 8 ? 1L << Chess.coorToSqi(col, row) : 0;
+	}
+
+	/**
+	 * Walk the rays of a slider, up to and including the first occupied square.
+	 */
+	private static long getSlidingAttacks(int sqi, long occupied, int[][] directions) {
+		long attacks = 0;
+		for (int[] direction : directions) {
+			int col = Chess.sqiToCol(sqi) + direction[0];
+			int row = Chess.sqiToRow(sqi) + direction[1];
+			while (col >= 0 && col < 8 && row >= 0 && row < 8) {
+				long bit = 1L << Chess.coorToSqi(col, row);
+				attacks |= bit;
+				if ((occupied & bit) != 0) {
+					break;
+				}
+				col += direction[0];
+				row += direction[1];
+			}
+		}
+		return attacks;
+	}
+
+	/**
+	 * Compute the relevant occupancies of every square and put the attacks
+	 * of all their subsets where the magics index them.
+	 *
+	 * @return the attack table of all squares
+	 */
+	private static long[] getAttackTable(int[][] directions, long[] magics, long[] masks, int[] shifts,
+			int[] offsets) {
+		int size = 0;
+		for (int sqi = 0; sqi < Chess.NUM_OF_SQUARES; sqi++) {
+			// the last square of a ray does not matter, it is attacked either way
+			long edges = ((0xFFL | 0xFFL << 56) & ~(0xFFL << (8 * Chess.sqiToRow(sqi))))
+					| ((0x0101010101010101L | 0x8080808080808080L) & ~(0x0101010101010101L << Chess.sqiToCol(sqi)));
+			masks[sqi] = getSlidingAttacks(sqi, 0, directions) & ~edges;
+
+			int bits = Long.bitCount(masks[sqi]);
+			shifts[sqi] = 64 - bits;
+			offsets[sqi] = size;
+			size += 1 << bits;
+		}
+
+		long[] table = new long[size];
+
+		for (int sqi = 0; sqi < Chess.NUM_OF_SQUARES; sqi++) {
+			long mask = masks[sqi];
+
+			// every subset of the mask (Carry-Rippler)
+			long subset = 0;
+			do {
+				long attacks = getSlidingAttacks(sqi, subset, directions);
+				int index = offsets[sqi] + (int) ((subset * magics[sqi]) >>> shifts[sqi]);
+
+				if (table[index] != 0 && table[index] != attacks) {
+					throw new IllegalStateException("Wrong magic for square " + sqi);
+				}
+				table[index] = attacks;
+
+				subset = (subset - mask) & mask;
+			} while (subset != 0);
+		}
+
+		return table;
+	}
+}
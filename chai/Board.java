@@ -0,0 +1,95 @@
+package chai;
+
+import chesspresso.move.IllegalMoveException;
+import chesspresso.position.Position;
+
+/**
+ * The position a search runs on. Squares, stones, colors, castles and moves
+ * are those of chesspresso, so a move found on any board can be played on a
+ * chesspresso Position, and hash codes are computed like Position.getHashCode.
+ *
+ * Unlike a chesspresso Position, a board takes the castling right away
+ * whenever a move leaves or enters the home square of its rook (see
+ * ChesspressoBoard), so hash codes and castles equal those of a Position
+ * that made the same moves only until chesspresso misses such a move.
+ * Both implementations agree with each other on every position.
+ *
+ * Implementations: ChesspressoBoard, which wraps a chesspresso Position,
+ * and BitboardPosition, which generates and makes moves without allocating.
+ */
+public interface Board {
+
+	public int getToPlay();
+
+	public long getHashCode();
+
+	public int getStone(int sqi);
+
+	/**
+	 * @return the piece on the square, or Chess.NO_PIECE
+	 */
+	public int getPiece(int sqi);
+
+	/**
+	 * @return the color of the stone on the square, or Chess.NOBODY
+	 */
+	public int getColor(int sqi);
+
+	public int getCastles();
+
+	public int getSqiEP();
+
+	public int getHalfMoveClock();
+
+	public int getPlyNumber();
+
+	/**
+	 * @return the material balance from the point of view of the side to
+	 * move, as counted by Position.getMaterial
+	 */
+	public int getMaterial();
+
+	public boolean isCheck();
+
+	public boolean isMate();
+
+	public boolean isStaleMate();
+
+	/**
+	 * @return whether the game is over by mate, stalemate or the fifty move rule
+	 */
+	public boolean isTerminal();
+
+	/**
+	 * @param moves: Buffer for the moves, at least MoveOrderer.MAX_MOVES long
+	 *
+	 * @return the number of legal moves, which are put at the start of the buffer
+	 */
+	public int getMoves(short[] moves);
+
+	public void doMove(short move) throws IllegalMoveException;
+
+	/**
+	 * Take back the last move made with doMove.
+	 */
+	public void undoMove();
+
+	/**
+	 * @return the last move made with doMove, or Move.NO_MOVE
+	 */
+	public short getLastShortMove();
+
+	/**
+	 * Pass: give the move to the opponent and clear the en passant square.
+	 */
+	public void doNullMove();
+
+	public void undoNullMove();
+
+	public String getFEN();
+
+	/**
+	 * @return a chesspresso Position of the same position, without the move history
+	 */
+	public Position toPosition();
+}
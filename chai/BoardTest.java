@@ -0,0 +1,139 @@
+package chai;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import chesspresso.Chess;
+import chesspresso.move.IllegalMoveException;
+import chesspresso.move.Move;
+import chesspresso.position.Position;
+
+/**
+ * Plays random games on a ChesspressoBoard and a BitboardPosition side by
+ * side and checks that both boards agree on every position: FEN, hash
+ * code, legal moves, check and material, also after the moves are taken
+ * back. The start positions have rooks that can be captured on their home
+ * squares, where the castling rights have to go.
+ *
+ * Usage: BoardTest [games] [seed]
+ */
+public class BoardTest {
+
+	private static final String[] POSITIONS = {
+			"rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1",
+			"r3k2r/8/8/8/8/8/8/R3K2R w KQkq - 0 1",
+			"r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1",
+			"r3k2r/Pppp1ppp/1b3nbN/nP6/BBP1P3/q4N2/Pp1P2PP/R2Q1RK1 w kq - 0 1",
+			"r3k2r/1b4bq/8/8/8/8/7B/R3K2R w KQkq - 0 1",
+			"8/2p5/3p4/KP5r/1R3p1k/8/4P1P1/8 w - - 0 1" };
+
+	private static final int MAX_PLIES = 200;
+
+	public static void main(String[] args) throws IllegalMoveException {
+		int games = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+		long seed = args.length > 1 ? Long.parseLong(args[1]) : 1;
+
+		Random random = new Random(seed);
+		short[] moves = new short[MoveOrderer.MAX_MOVES];
+
+		long positions = 0;
+		int failures = 0;
+
+		// the rook capture on the home square that chesspresso gets wrong
+		Board board = new ChesspressoBoard(new Position(POSITIONS[1]));
+		Board bitboard = new BitboardPosition(new Position(POSITIONS[1]));
+		int count = board.getMoves(moves);
+		for (int i = 0; i < count; i++) {
+			if (Move.getFromSqi(moves[i]) == Chess.A1 && Move.getToSqi(moves[i]) == Chess.A8) {
+				board.doMove(moves[i]);
+				bitboard.doMove(moves[i]);
+			}
+		}
+		if (!board.getFEN().startsWith("R3k2r/8/8/8/8/8/8/4K2R b Kk ") || compare(board, bitboard) != null) {
+			failures++;
+			System.out.println("FAILED a1xa8: " + board.getFEN() + " / " + bitboard.getFEN());
+		}
+
+		for (int game = 0; game < games && failures < 10; game++) {
+			String fen = POSITIONS[game % POSITIONS.length];
+			board = new ChesspressoBoard(new Position(fen));
+			bitboard = new BitboardPosition(new Position(fen));
+
+			String[] fens = new String[MAX_PLIES + 1];
+			int plies = 0;
+
+			while (true) {
+				positions++;
+				fens[plies] = board.getFEN();
+
+				String difference = compare(board, bitboard);
+				if (difference != null) {
+					failures++;
+					System.out.println("FAILED " + difference + " in " + board.getFEN() + " / " + bitboard.getFEN());
+					break;
+				}
+
+				if (plies == MAX_PLIES || board.isTerminal()) {
+					break;
+				}
+
+				count = board.getMoves(moves);
+				short move = moves[random.nextInt(count)];
+				board.doMove(move);
+				bitboard.doMove(move);
+				plies++;
+			}
+
+			while (plies > 0) {
+				board.undoMove();
+				bitboard.undoMove();
+				plies--;
+
+				if (!bitboard.getFEN().equals(fens[plies]) || board.getHashCode() != bitboard.getHashCode()) {
+					failures++;
+					System.out.println("FAILED undo to " + fens[plies] + ": " + bitboard.getFEN());
+					break;
+				}
+			}
+		}
+
+		System.out.println(positions + " positions, " + (failures == 0 ? "all passed" : failures + " failed"));
+		if (failures > 0) {
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * @return what the boards disagree on, or null if they agree
+	 */
+	private static String compare(Board board, Board bitboard) {
+		if (!board.getFEN().equals(bitboard.getFEN())) {
+			return "FEN";
+		}
+		if (board.getHashCode() != bitboard.getHashCode()) {
+			return "hash code";
+		}
+		if (board.isCheck() != bitboard.isCheck()) {
+			return "check";
+		}
+		if (board.isTerminal() != bitboard.isTerminal() || board.isMate() != bitboard.isMate()
+				|| board.isStaleMate() != bitboard.isStaleMate()) {
+			return "end of the game";
+		}
+		if (board.getMaterial() != bitboard.getMaterial()) {
+			return "material";
+		}
+
+		short[] moves = new short[MoveOrderer.MAX_MOVES];
+		short[] bitboardMoves = new short[MoveOrderer.MAX_MOVES];
+		int count = board.getMoves(moves);
+		int bitboardCount = bitboard.getMoves(bitboardMoves);
+
+		Arrays.sort(moves, 0, count);
+		Arrays.sort(bitboardMoves, 0, bitboardCount);
+		if (!Arrays.equals(moves, 0, count, bitboardMoves, 0, bitboardCount)) {
+			return "moves";
+		}
+		return null;
+	}
+}
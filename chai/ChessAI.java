@@ -4,7 +4,20 @@ import chesspresso.position.Position;
 
 public interface ChessAI {
 	int MAX_VALUE = new Position("4k3/8/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1").getMaterial();
+	// MAX_VALUE - n is a mate in n plies and -MAX_VALUE + n being mated in
+	// n plies; evaluations stay below MATE_THRESHOLD
+	int MAX_MATE_PLIES = 512;
+	int MATE_THRESHOLD = MAX_VALUE - MAX_MATE_PLIES;
 	public short getMove(Position position);
+	// deadline is a System.currentTimeMillis() value; AIs that cannot
+	// manage their time simply ignore it
+	public default short getMove(Position position, long deadline) {
+		return getMove(position);
+	}
+	// called once the AI's move has been played, so that it can think
+	// on the opponent's time
+	public default void ponder(Position position) {
+	}
 	public default int evaluate(Position position) {
 		return position.getMaterial();
 	}
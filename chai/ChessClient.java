@@ -73,8 +73,8 @@ public class ChessClient extends Application {
 		// Movemakers handle getting input from an AI, from the keyboard, or
 		// from a server, depending on which type is used.
 		moveMaker = new MoveMaker[2];
-		moveMaker[Chess.BLACK] = new AIMoveMaker(new MinimaxAI(Chess.BLACK, 4, false));
-		moveMaker[Chess.WHITE] = new AIMoveMaker(new MinimaxAI(Chess.WHITE, 4, false));
+		moveMaker[Chess.BLACK] = new AIMoveMaker(createPonderingAI(Chess.BLACK));
+		moveMaker[Chess.WHITE] = new AIMoveMaker(createPonderingAI(Chess.WHITE));
 
 		VBox vb = new VBox();
 		vb.getChildren().addAll(boardView, logArea, commandField);
@@ -99,6 +99,14 @@ public class ChessClient extends Application {
 
 	}
 
+	// Pondering AIs keep searching the expected reply while the opponent
+	// thinks; the expected reply comes from the transposition table
+	private static ChessAI createPonderingAI(int player) {
+		MinimaxAI ai = new MinimaxAI(player, 4, true);
+		ai.setPondering(true);
+		return ai;
+	}
+
 	private void log(String logText) {
 		logArea.appendText(logText + "\n");
 		
@@ -220,6 +228,8 @@ public class ChessClient extends Application {
 
 		public void reset() {
 			this.moveTask = null;
+			// the move has just been played, so think on the opponent's time
+			ai.ponder(game.position);
 		}
 
 	
@@ -0,0 +1,202 @@
+package chai;
+
+import java.util.Arrays;
+
+import chesspresso.Chess;
+import chesspresso.move.IllegalMoveException;
+import chesspresso.move.Move;
+import chesspresso.position.ImmutablePosition;
+import chesspresso.position.Position;
+
+/**
+ * A Board that delegates to a chesspresso Position, which it changes.
+ *
+ * chesspresso keeps the castling right of a rook that is captured on its
+ * home square, or that leaves it by a capture or for a corner of the
+ * opponent, and then even castles without the rook. The board takes such
+ * rights away, as BitboardPosition does, so after such a move its castles
+ * and hash code differ from those of a Position that made the same moves.
+ */
+public class ChesspressoBoard implements Board {
+
+	private final Position position;
+
+	// en passant squares cleared by null moves
+	private int[] nullMoveStack = new int[MoveOrderer.MAX_PLY];
+
+	private int nullMoveCount = 0;
+
+	/**
+	 * @param position: Position the board plays its moves on
+	 */
+	public ChesspressoBoard(Position position) {
+		this.position = position;
+	}
+
+	@Override
+	public int getToPlay() {
+		return position.getToPlay();
+	}
+
+	@Override
+	public long getHashCode() {
+		return position.getHashCode();
+	}
+
+	@Override
+	public int getStone(int sqi) {
+		return position.getStone(sqi);
+	}
+
+	@Override
+	public int getPiece(int sqi) {
+		return position.getPiece(sqi);
+	}
+
+	@Override
+	public int getColor(int sqi) {
+		return position.getColor(sqi);
+	}
+
+	@Override
+	public int getCastles() {
+		return position.getCastles();
+	}
+
+	@Override
+	public int getSqiEP() {
+		return position.getSqiEP();
+	}
+
+	@Override
+	public int getHalfMoveClock() {
+		return position.getHalfMoveClock();
+	}
+
+	@Override
+	public int getPlyNumber() {
+		return position.getPlyNumber();
+	}
+
+	@Override
+	public int getMaterial() {
+		return position.getMaterial();
+	}
+
+	@Override
+	public boolean isCheck() {
+		return position.isCheck();
+	}
+
+	@Override
+	public boolean isMate() {
+		return position.isMate();
+	}
+
+	@Override
+	public boolean isStaleMate() {
+		return position.isStaleMate();
+	}
+
+	@Override
+	public boolean isTerminal() {
+		return position.isTerminal();
+	}
+
+	/**
+	 * chesspresso returns a new array, and may include en passant captures
+	 * that expose the king (see Perft.isOwnKingInCheck), which are left out.
+	 */
+	@Override
+	public int getMoves(short[] moves) {
+		int count = 0;
+
+		for (short move : position.getAllMoves()) {
+			if (Move.isEPMove(move)) {
+				try {
+					position.doMove(move);
+				} catch (IllegalMoveException e) {
+					continue;
+				}
+				boolean legal = !Perft.isOwnKingInCheck(position);
+				position.undoMove();
+
+				if (!legal) {
+					continue;
+				}
+			}
+			moves[count++] = move;
+		}
+
+		return count;
+	}
+
+	@Override
+	public void doMove(short move) throws IllegalMoveException {
+		position.doMove(move);
+
+		int castles = position.getCastles();
+		int lostCastles = castles
+				& (getRookCastles(Move.getFromSqi(move)) | getRookCastles(Move.getToSqi(move)));
+
+		// undoMove restores the rights the position had before the move
+		if (lostCastles != 0) {
+			position.setCastles(castles & ~lostCastles);
+		}
+	}
+
+	/**
+	 * @return the castles that need a rook on the square, or NO_CASTLES
+	 */
+	private static int getRookCastles(int sqi) {
+		switch (sqi) {
+		case Chess.A1:
+			return ImmutablePosition.WHITE_LONG_CASTLE;
+		case Chess.H1:
+			return ImmutablePosition.WHITE_SHORT_CASTLE;
+		case Chess.A8:
+			return ImmutablePosition.BLACK_LONG_CASTLE;
+		case Chess.H8:
+			return ImmutablePosition.BLACK_SHORT_CASTLE;
+		default:
+			return ImmutablePosition.NO_CASTLES;
+		}
+	}
+
+	@Override
+	public void undoMove() {
+		position.undoMove();
+	}
+
+	@Override
+	public short getLastShortMove() {
+		return position.getLastShortMove();
+	}
+
+	@Override
+	public void doNullMove() {
+		if (nullMoveCount == nullMoveStack.length) {
+			nullMoveStack = Arrays.copyOf(nullMoveStack, 2 * nullMoveCount);
+		}
+		nullMoveStack[nullMoveCount++] = position.getSqiEP();
+
+		position.setSqiEP(Chess.NO_SQUARE);
+		position.toggleToPlay();
+	}
+
+	@Override
+	public void undoNullMove() {
+		position.toggleToPlay();
+		position.setSqiEP(nullMoveStack[--nullMoveCount]);
+	}
+
+	@Override
+	public String getFEN() {
+		return position.getFEN();
+	}
+
+	@Override
+	public Position toPosition() {
+		return new Position(position);
+	}
+}
@@ -0,0 +1,429 @@
+package chai;
+
+import java.util.Arrays;
+
+import chesspresso.Chess;
+
+/**
+ * Computes an endgame table by retrograde analysis.
+ *
+ * Every legal position first gets the results of its captures, which lead
+ * into smaller endings that are already known, and the number of its other
+ * moves. Then, starting with the mates, the positions are finalized in
+ * order of their distance to mate: the predecessors of a lost position are
+ * won one ply later, and a position is lost once all of its moves lead into
+ * won positions for the opponent. Whatever is left at the end is a draw.
+ *
+ * Pawnless endings without castling rights need none of the special rules,
+ * so the generator uses its own simple move geometry instead of
+ * chesspresso's.
+ */
+class EndgameGenerator {
+
+	// added to the move count of a position with a drawing capture, which can never be lost
+	private static final int DRAW_ESCAPE = 128;
+
+	// the longest distance to mate a code can hold
+	private static final int MAX_DISTANCE = 253;
+
+	// file and row steps of the rook directions followed by the bishop directions
+	private static final int[][] DIRECTIONS = {
+			{1, 0}, {-1, 0}, {0, 1}, {0, -1}, {1, 1}, {1, -1}, {-1, 1}, {-1, -1} };
+
+	private static final int[][] KNIGHT_STEPS = {
+			{1, 2}, {2, 1}, {2, -1}, {1, -2}, {-1, -2}, {-2, -1}, {-2, 1}, {-1, 2} };
+
+	// squares along each direction, nearest first
+	private static final int[][][] RAYS = new int[64][8][];
+
+	private static final long[] KING_ATTACKS = new long[64];
+
+	private static final long[] KNIGHT_ATTACKS = new long[64];
+
+	// squares strictly between two squares on a line
+	private static final long[][] BETWEEN = new long[64][64];
+
+	private static final boolean[][] ORTHOGONAL = new boolean[64][64];
+
+	private static final boolean[][] DIAGONAL = new boolean[64][64];
+
+	static {
+		for (int sqi = 0; sqi < 64; sqi++) {
+			int col = Chess.sqiToCol(sqi);
+			int row = Chess.sqiToRow(sqi);
+
+			for (int direction = 0; direction < 8; direction++) {
+				int[] ray = new int[7];
+				int length = 0;
+				long between = 0;
+
+				for (int c = col + DIRECTIONS[direction][0], r = row + DIRECTIONS[direction][1];
+						c >= 0 && c < 8 && r >= 0 && r < 8;
+						c += DIRECTIONS[direction][0], r += DIRECTIONS[direction][1]) {
+					int target = Chess.coorToSqi(c, r);
+					ray[length++] = target;
+
+					BETWEEN[sqi][target] = between;
+					ORTHOGONAL[sqi][target] = direction < 4;
+					DIAGONAL[sqi][target] = direction >= 4;
+					between |= 1L << target;
+				}
+
+				RAYS[sqi][direction] = Arrays.copyOf(ray, length);
+
+				if (length > 0) {
+					KING_ATTACKS[sqi] |= 1L << ray[0];
+				}
+			}
+
+			for (int[] step : KNIGHT_STEPS) {
+				int c = col + step[0];
+				int r = row + step[1];
+				if (c >= 0 && c < 8 && r >= 0 && r < 8) {
+					KNIGHT_ATTACKS[sqi] |= 1L << Chess.coorToSqi(c, r);
+				}
+			}
+		}
+	}
+
+	// chesspresso stones in the order of the signature
+	private final int[] stones;
+
+	private final int count;
+
+	private final int[] kings = new int[2];
+
+	private final EndgameTablebase smallerEndings;
+
+	private final byte[] codes;
+
+	// moves without a capture that are not yet known to lose
+	private final byte[] moveCounts;
+
+	// the longest loss that a capture leads to
+	private final byte[] captureLosses;
+
+	private int maxDistance = 0;
+
+	// scratch space of the position being looked at
+	private final int[] squares;
+
+	private final int[] remainingStones;
+
+	private final int[] remainingSquares;
+
+	/**
+	 * @param stones: Pieces of the ending in the order of its signature
+	 * @param smallerEndings: Tables of the endings the captures lead to
+	 */
+	EndgameGenerator(int[] stones, EndgameTablebase smallerEndings) {
+		this.stones = stones;
+		this.count = stones.length;
+		this.smallerEndings = smallerEndings;
+
+		for (int i = 0; i < count; i++) {
+			if (stones[i] == Chess.WHITE_KING) {
+				kings[Chess.WHITE] = i;
+			} else if (stones[i] == Chess.BLACK_KING) {
+				kings[Chess.BLACK] = i;
+			}
+		}
+
+		int size = EndgameTable.getSize(count);
+		codes = new byte[size];
+		moveCounts = new byte[size];
+		captureLosses = new byte[size];
+
+		squares = new int[count];
+		remainingStones = new int[count - 1];
+		remainingSquares = new int[count - 1];
+	}
+
+	/**
+	 * @return the code of every position, see EndgameTable
+	 */
+	byte[] generate() {
+		for (int index = 0; index < codes.length; index++) {
+			initialize(index);
+		}
+
+		for (int distance = 0; distance <= maxDistance; distance++) {
+			int code = distance % 2 == 1 ? distance : distance + 2;
+
+			for (int index = 0; index < codes.length; index++) {
+				if ((codes[index] & 0xFF) == code) {
+					retract(index, distance);
+				}
+			}
+		}
+
+		return codes;
+	}
+
+	/**
+	 * Resolve the captures of a position and count its other moves.
+	 */
+	private void initialize(int index) {
+		int toPlay = decode(index);
+
+		long occupied = 0;
+		for (int i = 0; i < count; i++) {
+			if ((occupied & 1L << squares[i]) != 0) {
+				return;
+			}
+			occupied |= 1L << squares[i];
+		}
+
+		// the side that just moved must not be in check
+		if (isAttacked(squares[kings[1 - toPlay]], toPlay, occupied, -1)) {
+			return;
+		}
+
+		boolean legalMove = false;
+		boolean drawingCapture = false;
+		int moves = 0;
+		int shortestWin = Integer.MAX_VALUE;
+		int longestLoss = 0;
+
+		for (int i = 0; i < count; i++) {
+			if (getColor(i) != toPlay) {
+				continue;
+			}
+
+			int fromSqi = squares[i];
+			long targets = getTargets(i, fromSqi, occupied, true);
+
+			while (targets != 0) {
+				int toSqi = Long.numberOfTrailingZeros(targets);
+				targets &= targets - 1;
+
+				int captured = getPieceAt(toSqi);
+				if (captured >= 0 && (getColor(captured) == toPlay || captured == kings[1 - toPlay])) {
+					continue;
+				}
+
+				squares[i] = toSqi;
+				long newOccupied = occupied & ~(1L << fromSqi) | 1L << toSqi;
+				boolean legal = !isAttacked(squares[kings[toPlay]], 1 - toPlay, newOccupied, captured);
+
+				if (legal) {
+					legalMove = true;
+
+					if (captured < 0) {
+						moves++;
+					} else {
+						int code = getCapturedCode(captured, 1 - toPlay);
+						if (code == EndgameTable.DRAW) {
+							drawingCapture = true;
+						} else if (EndgameTable.isWin(code)) {
+							longestLoss = Math.max(longestLoss, EndgameTable.getDistance(code) + 1);
+						} else {
+							shortestWin = Math.min(shortestWin, EndgameTable.getDistance(code) + 1);
+						}
+					}
+				}
+
+				squares[i] = fromSqi;
+			}
+		}
+
+		if (!legalMove) {
+			// mate or stalemate
+			if (isAttacked(squares[kings[toPlay]], 1 - toPlay, occupied, -1)) {
+				setCode(index, 2);
+			} else {
+				moveCounts[index] = (byte) DRAW_ESCAPE;
+			}
+			return;
+		}
+
+		moveCounts[index] = (byte) (moves + (drawingCapture ? DRAW_ESCAPE : 0));
+		captureLosses[index] = (byte) longestLoss;
+
+		if (shortestWin != Integer.MAX_VALUE) {
+			setCode(index, shortestWin);
+		} else if (moves == 0 && !drawingCapture) {
+			setCode(index, longestLoss + 2);
+		}
+	}
+
+	/**
+	 * Update the predecessors of a position whose result has just become final.
+	 */
+	private void retract(int index, int distance) {
+		int toPlay = decode(index);
+		boolean lost = EndgameTable.isLoss(codes[index] & 0xFF);
+
+		long occupied = 0;
+		for (int i = 0; i < count; i++) {
+			occupied |= 1L << squares[i];
+		}
+
+		// take back every move of the side that moved last
+		for (int i = 0; i < count; i++) {
+			if (getColor(i) == toPlay) {
+				continue;
+			}
+
+			int toSqi = squares[i];
+			long origins = getTargets(i, toSqi, occupied, false);
+
+			while (origins != 0) {
+				int fromSqi = Long.numberOfTrailingZeros(origins);
+				origins &= origins - 1;
+
+				squares[i] = fromSqi;
+				long newOccupied = occupied & ~(1L << toSqi) | 1L << fromSqi;
+
+				// before the move, the side to move now must not have been in check
+				if (!isAttacked(squares[kings[toPlay]], 1 - toPlay, newOccupied, -1)) {
+					int predecessor = EndgameTable.getIndex(squares, count, 1 - toPlay);
+					int code = codes[predecessor] & 0xFF;
+
+					if (lost) {
+						if (code == EndgameTable.DRAW || (EndgameTable.isWin(code) && code > distance + 1)) {
+							setCode(predecessor, distance + 1);
+						}
+					} else if (code == EndgameTable.DRAW) {
+						int moves = (moveCounts[predecessor] & 0xFF) - 1;
+						moveCounts[predecessor] = (byte) moves;
+
+						if (moves == 0) {
+							int lossDistance = Math.max(distance + 1, captureLosses[predecessor] & 0xFF);
+							setCode(predecessor, lossDistance + 2);
+						}
+					}
+				}
+
+				squares[i] = toSqi;
+			}
+		}
+	}
+
+	private void setCode(int index, int code) {
+		int distance = EndgameTable.getDistance(code);
+		if (distance > MAX_DISTANCE) {
+			throw new IllegalStateException("Distance to mate too long for the table: " + distance);
+		}
+
+		codes[index] = (byte) code;
+		maxDistance = Math.max(maxDistance, distance);
+	}
+
+	/**
+	 * Look up the position after a capture in the smaller ending.
+	 */
+	private int getCapturedCode(int captured, int toPlay) {
+		for (int i = 0, j = 0; i < count; i++) {
+			if (i != captured) {
+				remainingStones[j] = stones[i];
+				remainingSquares[j] = squares[i];
+				j++;
+			}
+		}
+
+		int code = smallerEndings.getCode(remainingStones, remainingSquares, count - 1, toPlay);
+		if (code < 0) {
+			throw new IllegalStateException("Missing endgame table: "
+					+ EndgameTablebase.getSignature(remainingStones, count - 1));
+		}
+		return code;
+	}
+
+	// fill squares with the position of the index and return the side to move
+	private int decode(int index) {
+		for (int i = count - 1; i >= 0; i--) {
+			squares[i] = index & 63;
+			index >>>= 6;
+		}
+		return index;
+	}
+
+	private int getColor(int piece) {
+		return stones[piece] < 0 ? Chess.WHITE : Chess.BLACK;
+	}
+
+	private int getPieceAt(int sqi) {
+		for (int i = 0; i < count; i++) {
+			if (squares[i] == sqi) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * @param captures: Whether the first occupied square of a line is included
+	 *
+	 * @return the squares the piece moves to, or, without captures, comes from
+	 */
+	private long getTargets(int piece, int sqi, long occupied, boolean captures) {
+		switch (Math.abs(stones[piece])) {
+		case Chess.KING:
+			return KING_ATTACKS[sqi] & (captures ? ~0L : ~occupied);
+		case Chess.KNIGHT:
+			return KNIGHT_ATTACKS[sqi] & (captures ? ~0L : ~occupied);
+		case Chess.ROOK:
+			return getSlides(sqi, 0, 4, occupied, captures);
+		case Chess.BISHOP:
+			return getSlides(sqi, 4, 8, occupied, captures);
+		default:
+			return getSlides(sqi, 0, 8, occupied, captures);
+		}
+	}
+
+	private static long getSlides(int sqi, int firstDirection, int lastDirection, long occupied, boolean captures) {
+		long targets = 0;
+		for (int direction = firstDirection; direction < lastDirection; direction++) {
+			for (int target : RAYS[sqi][direction]) {
+				if ((occupied & 1L << target) != 0) {
+					if (captures) {
+						targets |= 1L << target;
+					}
+					break;
+				}
+				targets |= 1L << target;
+			}
+		}
+		return targets;
+	}
+
+	/**
+	 * @param captured: Piece that has just been captured and attacks nothing, or -1
+	 *
+	 * @return whether a piece of the color attacks the square
+	 */
+	private boolean isAttacked(int sqi, int color, long occupied, int captured) {
+		for (int i = 0; i < count; i++) {
+			if (i == captured || getColor(i) != color) {
+				continue;
+			}
+
+			int from = squares[i];
+			boolean attacks;
+
+			switch (Math.abs(stones[i])) {
+			case Chess.KING:
+				attacks = (KING_ATTACKS[from] & 1L << sqi) != 0;
+				break;
+			case Chess.KNIGHT:
+				attacks = (KNIGHT_ATTACKS[from] & 1L << sqi) != 0;
+				break;
+			case Chess.ROOK:
+				attacks = ORTHOGONAL[from][sqi] && (BETWEEN[from][sqi] & occupied) == 0;
+				break;
+			case Chess.BISHOP:
+				attacks = DIAGONAL[from][sqi] && (BETWEEN[from][sqi] & occupied) == 0;
+				break;
+			default:
+				attacks = (ORTHOGONAL[from][sqi] || DIAGONAL[from][sqi]) && (BETWEEN[from][sqi] & occupied) == 0;
+				break;
+			}
+
+			if (attacks) {
+				return true;
+			}
+		}
+		return false;
+	}
+}
@@ -0,0 +1,128 @@
+package chai;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * The file of one endgame, e.g. KQKR, memory-mapped read-only.
+ *
+ * A position is indexed by the side to move and the squares of the pieces
+ * in the order of the signature, six bits each. Every position has a code
+ * of the same number of bits, packed without gaps: 0 for a draw (or an
+ * illegal position), an odd number d for a win in d plies and an even
+ * number c for a loss in c - 2 plies, both from the point of view of the
+ * side to move.
+ */
+class EndgameTable {
+
+	static final String EXTENSION = ".egtb";
+
+	static final int DRAW = 0;
+
+	// "EGTB"
+	private static final int MAGIC = 0x45475442;
+
+	private static final int HEADER_SIZE = 8;
+
+	// chesspresso stones in the order of the signature
+	final int[] stones;
+
+	private final ByteBuffer data;
+
+	private final int bits;
+
+	private final int mask;
+
+	EndgameTable(Path file, int[] stones) throws IOException {
+		this.stones = stones;
+
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+
+		if (data.capacity() < HEADER_SIZE || data.getInt(0) != MAGIC) {
+			throw new IOException("Not an endgame table: " + file);
+		}
+
+		bits = data.get(4);
+		mask = (1 << bits) - 1;
+	}
+
+	/**
+	 * @param index: Index of the position, see getIndex
+	 *
+	 * @return the code of the position
+	 */
+	int getCode(int index) {
+		long bitIndex = (long) index * bits;
+
+		// the file is padded, so a whole long can always be read
+		long word = data.getLong(HEADER_SIZE + (int) (bitIndex >>> 3));
+		int shift = 64 - (int) (bitIndex & 7) - bits;
+
+		return (int) (word >>> shift) & mask;
+	}
+
+	/**
+	 * @param squares: Squares of the pieces, in the order of the signature
+	 * @param count: Number of pieces
+	 * @param toPlay: Side to move
+	 */
+	static int getIndex(int[] squares, int count, int toPlay) {
+		int index = toPlay;
+		for (int i = 0; i < count; i++) {
+			index = index << 6 | squares[i];
+		}
+		return index;
+	}
+
+	static int getSize(int count) {
+		return 2 << (6 * count);
+	}
+
+	static boolean isWin(int code) {
+		return (code & 1) != 0;
+	}
+
+	static boolean isLoss(int code) {
+		return code != DRAW && (code & 1) == 0;
+	}
+
+	/**
+	 * @return the number of plies to mate of a won or lost position
+	 */
+	static int getDistance(int code) {
+		return isWin(code) ? code : code - 2;
+	}
+
+	/**
+	 * Pack the codes of all positions with as few bits as the largest code needs.
+	 */
+	static void write(Path file, byte[] codes) throws IOException {
+		int maxCode = 1;
+		for (byte code : codes) {
+			maxCode = Math.max(maxCode, code & 0xFF);
+		}
+		int bits = 32 - Integer.numberOfLeadingZeros(maxCode);
+
+		long totalBits = (long) codes.length * bits;
+		byte[] bytes = new byte[HEADER_SIZE + (int) ((totalBits + 7) >>> 3) + Long.BYTES];
+
+		ByteBuffer.wrap(bytes).putInt(MAGIC).put((byte) bits);
+
+		long bitIndex = 0;
+		for (byte code : codes) {
+			for (int bit = bits - 1; bit >= 0; bit--, bitIndex++) {
+				if (((code >>> bit) & 1) != 0) {
+					bytes[HEADER_SIZE + (int) (bitIndex >>> 3)] |= 0x80 >>> (bitIndex & 7);
+				}
+			}
+		}
+
+		Files.write(file, bytes);
+	}
+}
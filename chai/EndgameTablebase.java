@@ -0,0 +1,385 @@
+package chai;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import chesspresso.Chess;
+import chesspresso.move.IllegalMoveException;
+import chesspresso.position.ImmutablePosition;
+import chesspresso.position.Position;
+
+/**
+ * Endgame tables of pawnless endings with up to four pieces (kings
+ * included), giving the exact distance to mate of every position.
+ *
+ * Every ending has its own file, named by its signature: the pieces of the
+ * stronger side followed by those of the weaker one, e.g. KQKR. The tables
+ * are generated by main and memory-mapped read-only, so one instance can be
+ * shared by all AIs. Positions of the weaker side as white are looked up
+ * with the colors swapped.
+ */
+public class EndgameTablebase {
+
+	public static final int NOT_FOUND = Integer.MIN_VALUE;
+
+	static final int MAX_PIECES = 4;
+
+	// indexed by chesspresso piece: none, knight, bishop, rook, queen, pawn, king
+	private static final String PIECE_CHARS = " NBRQPK";
+
+	// pieces of a side are listed strongest first
+	private static final String PIECE_ORDER = "QRBN";
+
+	private static final String[] DEFAULT_SIGNATURES = {
+			"KQK", "KRK", "KQQK", "KQRK", "KRRK", "KBBK", "KBNK",
+			"KQKQ", "KQKR", "KQKB", "KQKN", "KRKR", "KRKB", "KRKN" };
+
+	// two bits for the number of each piece of each color except the king:
+	// white knights, bishops, rooks, queens, then the same for black
+	private static final int[] MATERIAL_DIGITS = {
+			0, 0, 1 << 6, 1 << 4, 1 << 2, 1, 0, 1 << 8, 1 << 10, 1 << 12, 1 << 14, 0, 0 };
+
+	private static final int MATERIAL_KEYS = 1 << 16;
+
+	// the digits of the rooks and queens of both colors
+	private static final int MAJOR_PIECES = 0xF0F0;
+
+	// Tables by the material key of a position. Both the key of an ending
+	// and the key with the colors swapped lead to its table, so that every
+	// position is found without building its signature.
+	private final EndgameTable[] tables = new EndgameTable[MATERIAL_KEYS];
+
+	// whether the table of a material key has the colors swapped
+	private final boolean[] flipped = new boolean[MATERIAL_KEYS];
+
+	private int maxPieces = 0;
+
+	/**
+	 * Open every table in the directory.
+	 */
+	public EndgameTablebase(Path directory) throws IOException {
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + EndgameTable.EXTENSION)) {
+			for (Path file : files) {
+				String name = file.getFileName().toString();
+				String signature = name.substring(0, name.length() - EndgameTable.EXTENSION.length());
+
+				int[] stones = parseSignature(signature);
+				EndgameTable table = new EndgameTable(file, stones);
+
+				int materialKey = getMaterialKey(stones);
+				int flippedKey = (materialKey & 0xFF) << 8 | materialKey >>> 8;
+
+				tables[materialKey] = table;
+				flipped[materialKey] = false;
+				if (flippedKey != materialKey) {
+					tables[flippedKey] = table;
+					flipped[flippedKey] = true;
+				}
+
+				maxPieces = Math.max(maxPieces, stones.length);
+			}
+		}
+	}
+
+	/**
+	 * @return the number of pieces of the largest table, or 0 if there is none
+	 */
+	public int getMaxPieces() {
+		return maxPieces;
+	}
+
+	/**
+	 * @return the value of the position from the point of view of the side
+	 * to move: 0 for a draw, otherwise ChessAI.MAX_VALUE - the plies to mate
+	 * for a win, and its negation for a loss, as the search scores mates.
+	 * NOT_FOUND if the position is not in the tablebase.
+	 */
+	public int getValue(Position position) {
+		return getValue(new ChesspressoBoard(position));
+	}
+
+	/**
+	 * @see #getValue(Position)
+	 */
+	public int getValue(Board position) {
+		if (position.getCastles() != ImmutablePosition.NO_CASTLES) {
+			return NOT_FOUND;
+		}
+
+		int materialKey = 0;
+		int count = 0;
+
+		for (int sqi = 0; sqi < Chess.NUM_OF_SQUARES; sqi++) {
+			int stone = position.getStone(sqi);
+			if (stone == Chess.NO_STONE) {
+				continue;
+			}
+
+			if (count == MAX_PIECES || Math.abs(stone) == Chess.PAWN) {
+				return NOT_FOUND;
+			}
+
+			materialKey += MATERIAL_DIGITS[stone + 6];
+			count++;
+		}
+
+		if (!canMate(materialKey, count)) {
+			return 0;
+		}
+
+		EndgameTable table = tables[materialKey];
+		if (table == null) {
+			return NOT_FOUND;
+		}
+
+		// Find the square of every piece of the table, in its order. Nothing
+		// is allocated, since the search probes many positions
+		boolean flip = flipped[materialKey];
+		int index = flip ? 1 - position.getToPlay() : position.getToPlay();
+		long used = 0;
+
+		for (int stone : table.stones) {
+			int wanted = flip ? -stone : stone;
+			for (int sqi = 0; sqi < Chess.NUM_OF_SQUARES; sqi++) {
+				if ((used & 1L << sqi) == 0 && position.getStone(sqi) == wanted) {
+					used |= 1L << sqi;
+					index = index << 6 | sqi;
+					break;
+				}
+			}
+		}
+
+		int code = table.getCode(index);
+
+		if (code == EndgameTable.DRAW) {
+			return 0;
+		}
+
+		int value = ChessAI.MAX_VALUE - EndgameTable.getDistance(code);
+		return EndgameTable.isWin(code) ? value : -value;
+	}
+
+	/**
+	 * @return the move that mates fastest, holds the draw or delays the mate
+	 * longest, or 0 if the position is not in the tablebase
+	 */
+	public short getBestMove(Position position) {
+		Board copy = new ChesspressoBoard(new Position(position));
+
+		if (getValue(copy) == NOT_FOUND) {
+			return 0;
+		}
+
+		short bestMove = 0;
+		int bestValue = Integer.MAX_VALUE;
+
+		short[] moves = new short[MoveOrderer.MAX_MOVES];
+		int moveCount = copy.getMoves(moves);
+
+		for (int i = 0; i < moveCount; i++) {
+			short move = moves[i];
+
+			try {
+				copy.doMove(move);
+			} catch (IllegalMoveException e) {
+				e.printStackTrace();
+				return 0;
+			}
+
+			// the value for the opponent, which is to be minimized
+			int value = getValue(copy);
+			copy.undoMove();
+
+			if (value != NOT_FOUND && value < bestValue) {
+				bestValue = value;
+				bestMove = move;
+			}
+		}
+
+		return bestMove;
+	}
+
+	/**
+	 * Look up a position given as a list of pieces in any order.
+	 *
+	 * @return the code of the position, or -1 if its table is missing
+	 */
+	int getCode(int[] stones, int[] squares, int count, int toPlay) {
+		int materialKey = 0;
+		for (int i = 0; i < count; i++) {
+			materialKey += MATERIAL_DIGITS[stones[i] + 6];
+		}
+
+		if (!canMate(materialKey, count)) {
+			return EndgameTable.DRAW;
+		}
+
+		EndgameTable table = tables[materialKey];
+		if (table == null) {
+			return -1;
+		}
+
+		boolean flip = flipped[materialKey];
+		int index = flip ? 1 - toPlay : toPlay;
+		int used = 0;
+
+		for (int stone : table.stones) {
+			int wanted = flip ? -stone : stone;
+			for (int i = 0; i < count; i++) {
+				if ((used & 1 << i) == 0 && stones[i] == wanted) {
+					used |= 1 << i;
+					index = index << 6 | squares[i];
+					break;
+				}
+			}
+		}
+
+		return table.getCode(index);
+	}
+
+	/**
+	 * @return the pieces of the signature as white and black stones, in order
+	 */
+	static int[] parseSignature(String signature) {
+		int secondKing = signature.indexOf('K', 1);
+		if (!signature.startsWith("K") || secondKing < 0 || signature.length() > MAX_PIECES) {
+			throw new IllegalArgumentException("Not a pawnless endgame of up to " + MAX_PIECES + " pieces: " + signature);
+		}
+
+		int[] stones = new int[signature.length()];
+		for (int i = 0; i < stones.length; i++) {
+			int piece = PIECE_CHARS.indexOf(signature.charAt(i));
+			if (piece <= 0 || piece == Chess.PAWN || (piece == Chess.KING && i != 0 && i != secondKing)) {
+				throw new IllegalArgumentException("Not a pawnless endgame of up to " + MAX_PIECES + " pieces: " + signature);
+			}
+			stones[i] = i < secondKing ? -piece : piece;
+		}
+
+		return stones;
+	}
+
+	/**
+	 * @return the signature of the pieces, with the stronger side first
+	 */
+	static String getSignature(int[] stones, int count) {
+		String white = getPieces(stones, count, Chess.WHITE);
+		String black = getPieces(stones, count, Chess.BLACK);
+		return compareStrength(black, white) > 0 ? black + white : white + black;
+	}
+
+	/**
+	 * @return whether either side has enough material to mate at all
+	 */
+	static boolean canMate(int[] stones) {
+		return canMate(getMaterialKey(stones), stones.length);
+	}
+
+	// a single minor piece cannot mate
+	private static boolean canMate(int materialKey, int count) {
+		return count > 3 || (materialKey & MAJOR_PIECES) != 0;
+	}
+
+	private static int getMaterialKey(int[] stones) {
+		int materialKey = 0;
+		for (int stone : stones) {
+			materialKey += MATERIAL_DIGITS[stone + 6];
+		}
+		return materialKey;
+	}
+
+	// the king followed by the other pieces of the color, strongest first
+	private static String getPieces(int[] stones, int count, int color) {
+		StringBuilder pieces = new StringBuilder("K");
+		for (char piece : PIECE_ORDER.toCharArray()) {
+			for (int i = 0; i < count; i++) {
+				int stone = stones[i];
+				if ((stone < 0 ? Chess.WHITE : Chess.BLACK) == color && PIECE_CHARS.charAt(Math.abs(stone)) == piece) {
+					pieces.append(piece);
+				}
+			}
+		}
+		return pieces.toString();
+	}
+
+	// more pieces are stronger, otherwise the strongest piece decides
+	private static int compareStrength(String pieces, String otherPieces) {
+		if (pieces.length() != otherPieces.length()) {
+			return pieces.length() - otherPieces.length();
+		}
+		for (int i = 1; i < pieces.length(); i++) {
+			int difference = PIECE_ORDER.indexOf(otherPieces.charAt(i)) - PIECE_ORDER.indexOf(pieces.charAt(i));
+			if (difference != 0) {
+				return difference;
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * Generate the table of an ending, and first those of the endings its
+	 * captures lead to, unless they are in the directory already.
+	 */
+	public static void generate(Path directory, String signature) throws IOException {
+		int[] stones = parseSignature(signature);
+		signature = getSignature(stones, stones.length);
+		stones = parseSignature(signature);
+
+		Path file = directory.resolve(signature + EndgameTable.EXTENSION);
+		if (Files.exists(file)) {
+			return;
+		}
+
+		for (int i = 0; i < stones.length; i++) {
+			if (Math.abs(stones[i]) == Chess.KING) {
+				continue;
+			}
+
+			int[] captured = new int[stones.length - 1];
+			for (int j = 0, k = 0; j < stones.length; j++) {
+				if (j != i) {
+					captured[k++] = stones[j];
+				}
+			}
+
+			if (canMate(captured)) {
+				generate(directory, getSignature(captured, captured.length));
+			}
+		}
+
+		long startTime = System.currentTimeMillis();
+
+		byte[] codes = new EndgameGenerator(stones, new EndgameTablebase(directory)).generate();
+		EndgameTable.write(file, codes);
+
+		System.out.println("Generated " + signature + " in " + (System.currentTimeMillis() - startTime) + " ms");
+	}
+
+	/**
+	 * Usage: EndgameTablebase directory [signature...]
+	 *
+	 * Without signatures, the three and four piece endings in which one side
+	 * can force mate in general are generated.
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length < 1) {
+			System.out.println("Usage: EndgameTablebase directory [signature...]");
+			return;
+		}
+
+		Path directory = Paths.get(args[0]);
+		Files.createDirectories(directory);
+
+		String[] signatures = DEFAULT_SIGNATURES;
+		if (args.length > 1) {
+			signatures = new String[args.length - 1];
+			System.arraycopy(args, 1, signatures, 0, signatures.length);
+		}
+
+		for (String signature : signatures) {
+			generate(directory, signature);
+		}
+	}
+}
@@ -0,0 +1,76 @@
+package chai;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import chesspresso.position.Position;
+
+/**
+ * Checks that the tablebase scores mates like the search does: the value
+ * of a KQK or KRK position must equal the score a full-width search without
+ * the tablebase finds for it.
+ *
+ * Usage: EndgameTablebaseTest [directory]; the tables are generated into a
+ * temporary directory if none is given.
+ */
+public class EndgameTablebaseTest {
+
+	// position, whether the side to move wins, and the plies to mate
+	private static final Object[][] POSITIONS = {
+			{ "k7/2K5/8/8/8/8/8/R7 b - - 0 1", false, 0 },
+			{ "k7/8/2K5/8/8/8/8/1Q6 w - - 0 1", true, 1 },
+			{ "k7/8/1K6/8/8/8/8/2R5 w - - 0 1", true, 1 },
+			{ "1k6/8/1K6/8/8/8/8/2R5 b - - 0 1", false, 2 },
+			{ "k7/8/8/2K5/8/8/8/1Q6 w - - 0 1", true, 3 },
+			{ "2k5/8/1K6/8/8/8/8/7R w - - 0 1", true, 3 } };
+
+	public static void main(String[] args) throws IOException {
+		Path directory = args.length > 0 ? Path.of(args[0]) : Files.createTempDirectory("tablebase");
+
+		EndgameTablebase.generate(directory, "KQK");
+		EndgameTablebase.generate(directory, "KRK");
+		EndgameTablebase tablebase = new EndgameTablebase(directory);
+
+		int failures = 0;
+
+		for (Object[] test : POSITIONS) {
+			String fen = (String) test[0];
+			boolean win = (Boolean) test[1];
+			int plies = (Integer) test[2];
+
+			int expected = win ? ChessAI.MAX_VALUE - plies : -(ChessAI.MAX_VALUE - plies);
+			int tablebaseValue = tablebase.getValue(new Position(fen));
+			int searchValue = search(fen, Math.max(1, plies));
+
+			boolean passed = tablebaseValue == expected && searchValue == expected;
+			if (!passed) {
+				failures++;
+			}
+			System.out.println(String.format("%-6s expected %5d  tablebase %5d  search %5d  %s",
+					passed ? "ok" : "FAILED", expected, tablebaseValue, searchValue, fen));
+		}
+
+		System.out.println(failures == 0 ? "All positions passed" : failures + " positions failed");
+		if (failures > 0) {
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * @return the score of a full-width search without the tablebase, from
+	 * the point of view of the side to move
+	 */
+	private static int search(String fen, int depth) {
+		Position position = new Position(fen);
+		MinimaxAI ai = new AlphaBetaPruningAI(position.getToPlay(), depth, true);
+
+		int[] value = new int[1];
+		ai.setSearchListener((iterationDepth, iterationValue, nodes, time, principalVariation) -> {
+			value[0] = iterationValue;
+		});
+
+		ai.getMove(position);
+		return value[0];
+	}
+}
@@ -0,0 +1,368 @@
+package chai;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiFunction;
+
+import chesspresso.Chess;
+import chesspresso.move.IllegalMoveException;
+import chesspresso.position.Position;
+
+/**
+ * Hosts many concurrent games on a bounded pool of search threads, instead
+ * of a thread per game. All AIs share one transposition table, which is
+ * lockless, so every game profits from the positions the others have
+ * searched.
+ *
+ * Every game has a clock for each color, and a move gets a share of the
+ * remaining time, but never more than the maximum move time, so no search
+ * holds a worker for long. Waiting moves are served in the order of the
+ * search time their games have used so far, so that games which search
+ * deeply cannot starve the others.
+ *
+ * Usage: EngineService [games] [workers] [transposition table megabytes] [milliseconds per game]
+ */
+public class EngineService implements AutoCloseable {
+
+	// moves left in the game that the remaining time is spread over
+	private static final int MOVES_TO_GO = 30;
+
+	// the shared table is aged this often, rather than by every search
+	private static final long AGING_PERIOD = 1000;
+
+	private final TranspositionTable transpositionTable;
+
+	private final BiFunction<Integer, TranspositionTable, ? extends MinimaxAI> factory;
+
+	private final long maximumMoveTime;
+
+	private final ThreadPoolExecutor pool;
+
+	private final Set<Game> games = ConcurrentHashMap.newKeySet();
+
+	// breaks ties between requests of games that have used the same time, first come first served
+	private final AtomicLong sequence = new AtomicLong();
+
+	private volatile long lastAging = System.currentTimeMillis();
+
+	/**
+	 * @param workers: Number of searches that run at the same time
+	 * @param megabytes: Size of the shared transposition table
+	 * @param maximumMoveTime: Milliseconds any single move may take
+	 * @param factory: Creates the AI of a color, searching with the given table
+	 */
+	public EngineService(int workers, int megabytes, long maximumMoveTime,
+			BiFunction<Integer, TranspositionTable, ? extends MinimaxAI> factory) {
+		this.transpositionTable = new TranspositionTable(megabytes);
+		this.factory = factory;
+		this.maximumMoveTime = maximumMoveTime;
+
+		// The queue orders the requests, so it has to be unbounded; the
+		// pool is bounded by its fixed number of threads instead
+		this.pool = new ThreadPoolExecutor(workers, workers, 0, TimeUnit.MILLISECONDS,
+				new PriorityBlockingQueue<>());
+	}
+
+	/**
+	 * @param time: Milliseconds on the clock of each color
+	 * @param increment: Milliseconds added to the clock after every move
+	 */
+	public Game newGame(long time, long increment) {
+		Game game = new Game(time, increment);
+		games.add(game);
+		return game;
+	}
+
+	public TranspositionTable getTranspositionTable() {
+		return transpositionTable;
+	}
+
+	public int getGameCount() {
+		return games.size();
+	}
+
+	/**
+	 * @return the number of moves waiting for a worker
+	 */
+	public int getQueuedRequests() {
+		return pool.getQueue().size();
+	}
+
+	public int getActiveSearches() {
+		return pool.getActiveCount();
+	}
+
+	/**
+	 * Stop every search and cancel the moves that are still waiting.
+	 */
+	@Override
+	public void close() {
+		List<Runnable> waiting = pool.shutdownNow();
+
+		for (Game game : games) {
+			game.close();
+		}
+
+		for (Runnable request : waiting) {
+			((Request) request).cancel();
+		}
+	}
+
+	private void ageTable() {
+		long now = System.currentTimeMillis();
+		if (now - lastAging >= AGING_PERIOD) {
+			lastAging = now;
+			transpositionTable.newSearch();
+		}
+	}
+
+	/**
+	 * A game hosted by the service. Only one move of a game can be searched
+	 * at a time.
+	 */
+	public class Game {
+
+		private final MinimaxAI[] ais = new MinimaxAI[2];
+
+		private final long[] remainingTime;
+
+		private final long increment;
+
+		// milliseconds all searches of the game have taken, which decides its priority
+		private long usedTime = 0;
+
+		private boolean searching = false;
+
+		private boolean closed = false;
+
+		private MinimaxAI searchingAI = null;
+
+		private Game(long time, long increment) {
+			this.remainingTime = new long[] { time, time };
+			this.increment = increment;
+		}
+
+		/**
+		 * Queue the search of a move.
+		 *
+		 * @param position: Position to search; later changes do not affect the search
+		 *
+		 * @return the move, once a worker has searched it
+		 */
+		public synchronized CompletableFuture<Short> requestMove(Position position) {
+			if (closed) {
+				throw new IllegalStateException("The game is closed");
+			}
+			if (searching) {
+				throw new IllegalStateException("A move of this game is already being searched");
+			}
+			searching = true;
+
+			Request request = new Request(this, new Position(position), usedTime, sequence.getAndIncrement());
+			pool.execute(request);
+			return request.future;
+		}
+
+		/**
+		 * @return the milliseconds left on the clock of the color
+		 */
+		public synchronized long getRemainingTime(int color) {
+			return remainingTime[color];
+		}
+
+		public synchronized long getUsedTime() {
+			return usedTime;
+		}
+
+		/**
+		 * Stop the search of the game, if any, and release its AIs.
+		 */
+		public void close() {
+			MinimaxAI ai;
+			synchronized (this) {
+				closed = true;
+				ai = searchingAI;
+				ais[Chess.WHITE] = null;
+				ais[Chess.BLACK] = null;
+			}
+			if (ai != null) {
+				ai.stop();
+			}
+			games.remove(this);
+		}
+
+		/**
+		 * @return the AI that is to search, or null if the game is closed
+		 */
+		private synchronized MinimaxAI startSearch(int color) {
+			if (closed) {
+				return null;
+			}
+			if (ais[color] == null) {
+				ais[color] = factory.apply(color, transpositionTable);
+				ais[color].setTableAging(false);
+			}
+			searchingAI = ais[color];
+			return searchingAI;
+		}
+
+		private synchronized long getMoveTime(int color) {
+			long moveTime = remainingTime[color] / MOVES_TO_GO + increment * 3 / 4;
+			return Math.max(1, Math.min(moveTime, maximumMoveTime));
+		}
+
+		private synchronized void finishSearch(int color, long time) {
+			remainingTime[color] += increment - time;
+			usedTime += time;
+			searching = false;
+			searchingAI = null;
+		}
+	}
+
+	/**
+	 * The search of one move, ordered by the time its game had used when it was requested.
+	 */
+	private class Request implements Runnable, Comparable<Request> {
+
+		private final Game game;
+
+		private final Position position;
+
+		private final long usedTime;
+
+		private final long number;
+
+		private final CompletableFuture<Short> future = new CompletableFuture<>();
+
+		Request(Game game, Position position, long usedTime, long number) {
+			this.game = game;
+			this.position = position;
+			this.usedTime = usedTime;
+			this.number = number;
+		}
+
+		@Override
+		public void run() {
+			int color = position.getToPlay();
+
+			MinimaxAI ai = game.startSearch(color);
+			if (ai == null) {
+				cancel();
+				return;
+			}
+
+			long startTime = System.currentTimeMillis();
+			short move = 0;
+			RuntimeException exception = null;
+
+			try {
+				move = ai.getMove(position, startTime + game.getMoveTime(color));
+			} catch (RuntimeException e) {
+				exception = e;
+			}
+
+			game.finishSearch(color, System.currentTimeMillis() - startTime);
+			ageTable();
+
+			if (exception != null) {
+				future.completeExceptionally(exception);
+			} else {
+				future.complete(move);
+			}
+		}
+
+		void cancel() {
+			game.finishSearch(position.getToPlay(), 0);
+			future.completeExceptionally(new CancellationException("The engine service was closed"));
+		}
+
+		@Override
+		public int compareTo(Request other) {
+			if (usedTime != other.usedTime) {
+				return Long.compare(usedTime, other.usedTime);
+			}
+			return Long.compare(number, other.number);
+		}
+	}
+
+	/**
+	 * Play games of the engine against itself on the service, to see how
+	 * many games a machine can serve.
+	 */
+	public static void main(String[] args) throws InterruptedException {
+		int gameCount = args.length > 0 ? Integer.parseInt(args[0]) : 100;
+		int workers = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+		int megabytes = args.length > 2 ? Integer.parseInt(args[2]) : 256;
+		long time = args.length > 3 ? Long.parseLong(args[3]) : 60000;
+
+		int maxPlies = 80;
+
+		SearchOptions options = new SearchOptions()
+				.setQuiescenceSearch(true)
+				.setNullMovePruning(true)
+				.setLateMoveReductions(true)
+				.setCheckExtensions(true);
+
+		CountDownLatch finishedGames = new CountDownLatch(gameCount);
+		AtomicLong moves = new AtomicLong();
+		long startTime = System.currentTimeMillis();
+
+		try (EngineService service = new EngineService(workers, megabytes, time / MOVES_TO_GO, (color, table) -> {
+			MinimaxAI ai = new AlphaBetaPruningAI(color, MoveOrderer.MAX_PLY - 1, table, options);
+			ai.setEvaluator(PieceSquareEvaluator::new);
+			ai.setBoard(BitboardPosition::new);
+			return ai;
+		})) {
+			for (int i = 0; i < gameCount; i++) {
+				Game game = service.newGame(time, 0);
+				playMove(game, Position.createInitialPosition(), maxPlies, moves, finishedGames);
+			}
+
+			while (!finishedGames.await(1, TimeUnit.SECONDS)) {
+				System.out.println(String.format("%d games left, %d searching, %d waiting, %d moves",
+						finishedGames.getCount(), service.getActiveSearches(), service.getQueuedRequests(),
+						moves.get()));
+			}
+		}
+
+		long elapsed = System.currentTimeMillis() - startTime;
+		System.out.println(String.format("%d games, %d moves in %d ms: %.1f moves per second", gameCount, moves.get(),
+				elapsed, moves.get() * 1000.0 / elapsed));
+	}
+
+	private static void playMove(Game game, Position position, int maxPlies, AtomicLong moves,
+			CountDownLatch finishedGames) {
+		if (position.isTerminal() || position.getPlyNumber() >= maxPlies) {
+			game.close();
+			finishedGames.countDown();
+			return;
+		}
+
+		game.requestMove(position).whenComplete((move, exception) -> {
+			if (exception != null) {
+				finishedGames.countDown();
+				return;
+			}
+
+			try {
+				position.doMove(move);
+			} catch (IllegalMoveException e) {
+				e.printStackTrace();
+				game.close();
+				finishedGames.countDown();
+				return;
+			}
+
+			moves.incrementAndGet();
+			playMove(game, position, maxPlies, moves, finishedGames);
+		});
+	}
+}
@@ -0,0 +1,29 @@
+package chai;
+
+/**
+ * Static evaluation used by MinimaxAI. An evaluator may keep state that is
+ * updated incrementally while the search makes and takes back moves, so
+ * every search thread owns its own instance.
+ */
+public interface Evaluator {
+
+	/**
+	 * Compute the state of the evaluator from scratch.
+	 */
+	public void reset(Board position);
+
+	/**
+	 * Called right before the move is made in the position.
+	 */
+	public void doMove(Board position, short move);
+
+	/**
+	 * Called right after the last move has been taken back.
+	 */
+	public void undoMove();
+
+	/**
+	 * @return the value of the position from the point of view of the side to move
+	 */
+	public int evaluate(Board position);
+}
@@ -0,0 +1,25 @@
+package chai;
+
+/**
+ * Evaluates a position by its material balance alone.
+ */
+public class MaterialEvaluator implements Evaluator {
+
+	@Override
+	public void reset(Board position) {
+	}
+
+	@Override
+	public void doMove(Board position, short move) {
+	}
+
+	@Override
+	public void undoMove() {
+	}
+
+	@Override
+	public int evaluate(Board position) {
+		// stay clear of the mate scores
+		return Math.max(-ChessAI.MATE_THRESHOLD + 1, Math.min(ChessAI.MATE_THRESHOLD - 1, position.getMaterial()));
+	}
+}
@@ -1,186 +1,1318 @@
 package chai;
 
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Comparator;
-import java.util.HashMap;
-import java.util.List;
+import java.util.Arrays;
 import java.util.Random;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 import chesspresso.Chess;
 import chesspresso.move.IllegalMoveException;
+import chesspresso.move.Move;
 import chesspresso.position.Position;
-class Node {
-	int depth;
-	int value;
-	public Node(int depth, int value) {
-		this.depth = depth;
-		this.value = value;
-	}
-}
+
 public class MinimaxAI implements ChessAI {
 
+	// material gained by a capture, indexed by chesspresso piece, as counted by Position.getMaterial
+	private static final int[] PIECE_VALUES = {0, 300, 325, 500, 900, 100, 0};
+
+	// captures that cannot bring the material this close to alpha are not searched
+	private static final int DELTA_MARGIN = 200;
+
+	// half width of the window around the previous iteration's score
+	private static final int ASPIRATION_WINDOW = 50;
+
+	// depth reduction of the null move search
+	private static final int NULL_MOVE_REDUCTION = 2;
+
+	// number of moves of a node that are always searched at full depth
+	private static final int FULL_DEPTH_MOVES = 3;
+
+	// moves are not reduced close to the horizon
+	private static final int REDUCTION_LIMIT = 3;
+
 	private final int player;
-	
-	private final int maximumDepth;
 
-	private final boolean alphaBetaPruningEnabled;
-	
-	private final boolean transpositionTableEnabled;
-	
+	private int maximumDepth;
+
+	private final SearchStrategy strategy;
+
+	private final SearchOptions options;
+
 	private final Random r = new Random(1527);
-	
-	private int visitedPositions = 0;
 
-	private HashMap<Long, Node> transpositionTable = new HashMap<>();
-	
+	private long visitedPositions = 0;
+
+	private long quiescencePositions = 0;
+
+	private long moveTime = 0;
+
+	private int threads = 1;
+
+	private volatile long deadline = Long.MAX_VALUE;
+
+	private volatile boolean stopped = false;
+
+	// set when the main search is done, so that the helper threads stop as well
+	private volatile boolean finished = false;
+
+	// set once a search has taken over its deadline, until it has finished
+	private volatile boolean searching = false;
+
+	private int completedDepth = 0;
+
+	// counters of the last completed search
+	private volatile SearchStatistics searchStatistics = new SearchStatistics();
+
+	// the Lazy SMP helpers of the running search, whose nodes the listener is told
+	private volatile Searcher[] helpers = new Searcher[0];
+
+	private final TranspositionTable transpositionTable;
+
+	private boolean tableAging = true;
+
+	private Supplier<? extends Evaluator> evaluatorFactory = MaterialEvaluator::new;
+
+	private Function<Position, ? extends Board> boardFactory = BitboardPosition::new;
+
+	private OpeningBook openingBook = null;
+
+	private EndgameTablebase tablebase = null;
+
+	private SearchListener searchListener = null;
+
+	// System.currentTimeMillis() when the last search started
+	private long searchStartTime;
+
+	private boolean ponderingEnabled = false;
+
+	private Thread ponderThread = null;
+
+	// hash code of the position the ponder search is running on
+	private long ponderKey;
+
+	private long ponderStartTime;
+
+	private volatile short ponderMove;
+
+	// one per search thread, kept between moves for the history heuristic
+	private MoveOrderer[] moveOrderers = { new MoveOrderer() };
+
 	public MinimaxAI(int player, int maximumDepth, boolean transpositionTableEnabled) {
-		this(player, maximumDepth, false, transpositionTableEnabled);
+		this(player, maximumDepth, SearchStrategy.MINIMAX, transpositionTableEnabled);
 	}
-	
-	protected MinimaxAI(int player, int maximumDepth, boolean alphaBetaPruningEnabled, boolean transpositionTableEnabled) {
+
+	public MinimaxAI(int player, int maximumDepth, TranspositionTable transpositionTable) {
+		this(player, maximumDepth, SearchStrategy.MINIMAX, transpositionTable);
+	}
+
+	public MinimaxAI(int player, int maximumDepth, SearchStrategy strategy, boolean transpositionTableEnabled) {
+		this(player, maximumDepth, strategy,
+				transpositionTableEnabled ? new TranspositionTable(TranspositionTable.DEFAULT_SIZE) : null);
+	}
+
+	public MinimaxAI(int player, int maximumDepth, SearchStrategy strategy, TranspositionTable transpositionTable) {
+		this(player, maximumDepth, strategy, transpositionTable, new SearchOptions());
+	}
+
+	public MinimaxAI(int player, int maximumDepth, SearchStrategy strategy, TranspositionTable transpositionTable,
+			SearchOptions options) {
 		this.player = player;
 		this.maximumDepth = maximumDepth;
-		this.alphaBetaPruningEnabled = alphaBetaPruningEnabled;
-		this.transpositionTableEnabled = transpositionTableEnabled;
+		this.strategy = strategy;
+		this.transpositionTable = transpositionTable;
+		this.options = options;
+	}
+
+	/**
+	 * @return the transposition table of this AI, or null if it is disabled
+	 */
+	public TranspositionTable getTranspositionTable() {
+		return transpositionTable;
+	}
+
+	/**
+	 * Whether every search ages the transposition table, so that entries of
+	 * earlier searches can be replaced. A table shared by many games would
+	 * age far too quickly that way, so its owner ages it instead.
+	 */
+	public void setTableAging(boolean tableAging) {
+		this.tableAging = tableAging;
+	}
+
+	/**
+	 * @param maximumDepth: Depth of the last iteration of iterative deepening
+	 */
+	public void setMaximumDepth(int maximumDepth) {
+		this.maximumDepth = maximumDepth;
+	}
+
+	/**
+	 * Limit the time spent on each move returned by getMove(Position).
+	 *
+	 * @param moveTime: Milliseconds per move, or 0 to always search to the maximum depth
+	 */
+	public void setMoveTime(long moveTime) {
+		this.moveTime = moveTime;
+	}
+
+	/**
+	 * Search with several threads sharing the transposition table (Lazy SMP).
+	 * The helper threads only fill the table; the move is always taken from
+	 * the calling thread, which makes a single thread fully deterministic.
+	 * Without a transposition table there is nothing to share, so only the
+	 * calling thread searches.
+	 *
+	 * @param threads: Number of search threads, including the calling one
+	 */
+	public void setThreads(int threads) {
+		if (threads < 1) {
+			throw new IllegalArgumentException("At least one search thread is required: " + threads);
+		}
+		this.threads = threads;
+
+		if (moveOrderers.length < threads) {
+			MoveOrderer[] orderers = Arrays.copyOf(moveOrderers, threads);
+			for (int i = moveOrderers.length; i < threads; i++) {
+				orderers[i] = new MoveOrderer();
+			}
+			moveOrderers = orderers;
+		}
+	}
+
+	/**
+	 * Choose the static evaluation of the search. Every search thread gets
+	 * its own evaluator from the factory.
+	 *
+	 * @param evaluatorFactory: Creates the evaluators, for example PieceSquareEvaluator::new
+	 */
+	public void setEvaluator(Supplier<? extends Evaluator> evaluatorFactory) {
+		this.evaluatorFactory = evaluatorFactory;
+	}
+
+	/**
+	 * Choose the board the search threads make their moves on. Every search
+	 * thread gets its own board, created from its own copy of the position.
+	 * The default BitboardPosition allocates nothing per node, while
+	 * ChesspressoBoard gets a new move array from chesspresso at every node.
+	 *
+	 * @param boardFactory: Creates the boards, for example ChesspressoBoard::new
+	 */
+	public void setBoard(Function<Position, ? extends Board> boardFactory) {
+		this.boardFactory = boardFactory;
+	}
+
+	/**
+	 * Play from the opening book as long as the position is in it. The book
+	 * is only read, so one instance can be shared by several AIs.
+	 *
+	 * @param openingBook: Book to consult before searching, or null for none
+	 */
+	public void setOpeningBook(OpeningBook openingBook) {
+		this.openingBook = openingBook;
+	}
+
+	/**
+	 * Look up positions with few pieces in the endgame tablebase instead of
+	 * searching them, and play the tablebase move once the game itself is
+	 * in the tablebase.
+	 *
+	 * @param tablebase: Tablebase to probe, or null for none
+	 */
+	public void setTablebase(EndgameTablebase tablebase) {
+		this.tablebase = tablebase;
+	}
+
+	/**
+	 * Keep searching on the opponent's time; see ponder(Position).
+	 */
+	public void setPondering(boolean ponderingEnabled) {
+		this.ponderingEnabled = ponderingEnabled;
+		if (!ponderingEnabled) {
+			stopPondering();
+		}
+	}
+
+	/**
+	 * @param seed: Seed of the choice between book moves and equally good moves
+	 */
+	public void setSeed(long seed) {
+		r.setSeed(seed);
+	}
+
+	/**
+	 * @param searchListener: Receives the result of every iteration of the main search, or null
+	 */
+	public void setSearchListener(SearchListener searchListener) {
+		this.searchListener = searchListener;
+	}
+
+	/**
+	 * Abort the running search; getMove returns the best move of the last
+	 * completed iteration.
+	 */
+	public void stop() {
+		stopped = true;
+	}
+
+	/**
+	 * Move the deadline of the running search, e.g. when the search of an
+	 * expected position turns into the search of the actual one.
+	 *
+	 * @param deadline: System.currentTimeMillis() value at which the search is aborted
+	 */
+	public void setDeadline(long deadline) {
+		this.deadline = deadline;
+	}
+
+	/**
+	 * @return whether a search is running; a deadline set before it has
+	 * started is overwritten by the deadline the search was called with
+	 */
+	public boolean isSearching() {
+		return searching;
+	}
+
+	/**
+	 * @return the depth of the last completed iteration of the last search
+	 */
+	public int getCompletedDepth() {
+		return completedDepth;
+	}
+
+	/**
+	 * @return the counters of the last search, which are replaced when the next one is done
+	 */
+	public SearchStatistics getSearchStatistics() {
+		return searchStatistics;
+	}
+
+	/**
+	 * @return the number of positions visited by the full-width search of all moves so far
+	 */
+	public long getVisitedPositions() {
+		return visitedPositions;
+	}
+
+	/**
+	 * @return the number of positions visited by the quiescence search of all moves so far
+	 */
+	public long getQuiescencePositions() {
+		return quiescencePositions;
 	}
 
 	@Override
 	public short getMove(Position inputPosition) {
-		Position position = new Position(inputPosition);
-		
-		List<Short> bestMoves = new ArrayList<>();
-		
-		int bestValue = -ChessAI.MAX_VALUE;
-		
-		for (int depth = 1; depth <= maximumDepth; depth++) {
-			for (short move : position.getAllMoves()) {
-				try {
-					position.doMove(move);
-				} catch (IllegalMoveException e) {
-					e.printStackTrace();
-					return 0;
+		return getMove(inputPosition, moveTime > 0 ? System.currentTimeMillis() + moveTime : Long.MAX_VALUE);
+	}
+
+	/**
+	 * Play a book or tablebase move if the position is in the opening book
+	 * or the endgame tablebase, otherwise search the position with iterative
+	 * deepening until the maximum depth is reached or the deadline has passed.
+	 *
+	 * @param inputPosition: Position to search
+	 * @param deadline: System.currentTimeMillis() value at which the search is aborted
+	 *
+	 * @return one of the best moves found by the last completed iteration
+	 */
+	@Override
+	public short getMove(Position inputPosition, long deadline) {
+		if (openingBook != null) {
+			short bookMove = openingBook.getMove(inputPosition, r);
+			if (bookMove != 0) {
+				stopPondering();
+				return bookMove;
+			}
+		}
+
+		if (tablebase != null) {
+			short tablebaseMove = tablebase.getBestMove(inputPosition);
+			if (tablebaseMove != 0) {
+				stopPondering();
+				return tablebaseMove;
+			}
+		}
+
+		if (ponderThread != null) {
+			if (inputPosition.getHashCode() == ponderKey) {
+				// Ponder hit: the time spent pondering counts towards this
+				// move, so the search gets the same total time as without
+				// pondering. The deadline is set until the search has
+				// actually started, since starting overwrites it
+				if (deadline != Long.MAX_VALUE) {
+					deadline = ponderStartTime + Math.max(deadline - System.currentTimeMillis(), 0);
 				}
-				
-				int value = getValue(position, depth - 1, bestValue);
-				
-				if (value == ChessAI.MAX_VALUE) {
+				while (ponderThread.isAlive()) {
+					this.deadline = deadline;
 					try {
-						Thread.sleep(10000);
+						ponderThread.join(10);
 					} catch (InterruptedException e) {
-						// TODO Auto-generated catch block
-						e.printStackTrace();
+						Thread.currentThread().interrupt();
+						stopPondering();
+					}
+				}
+				ponderThread = null;
+				return ponderMove;
+			}
+
+			stopPondering();
+		}
+
+		return search(inputPosition, deadline);
+	}
+
+	/**
+	 * Start searching the position that arises if the opponent plays the
+	 * expected reply, while the opponent is thinking. If the opponent does
+	 * play it, the next getMove continues this search instead of starting
+	 * a new one. Does nothing unless pondering is enabled.
+	 *
+	 * @param position: Position after the AI's move, with the opponent to move
+	 */
+	@Override
+	public void ponder(Position position) {
+		if (!ponderingEnabled) {
+			return;
+		}
+
+		stopPondering();
+
+		short expectedMove = getPonderMove(position);
+		if (expectedMove == 0) {
+			return;
+		}
+
+		Position ponderPosition = new Position(position);
+		try {
+			ponderPosition.doMove(expectedMove);
+		} catch (IllegalMoveException e) {
+			return;
+		}
+
+		ponderKey = ponderPosition.getHashCode();
+		ponderStartTime = System.currentTimeMillis();
+		ponderThread = new Thread(() -> ponderMove = search(ponderPosition, Long.MAX_VALUE), "MinimaxAI ponder");
+		ponderThread.setDaemon(true);
+		ponderThread.start();
+	}
+
+	/**
+	 * Abort pondering, if the AI is pondering.
+	 */
+	public void stopPondering() {
+		if (ponderThread == null) {
+			return;
+		}
+
+		// A search that has not started yet would reset the stop flag
+		while (ponderThread.isAlive()) {
+			stop();
+			try {
+				ponderThread.join(10);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		ponderThread = null;
+	}
+
+	/**
+	 * @param position: Position after the AI's move, with the opponent to move
+	 *
+	 * @return the reply the last search expects from the opponent, or 0 if it
+	 * is not known
+	 */
+	public short getPonderMove(Position position) {
+		if (transpositionTable == null) {
+			return 0;
+		}
+
+		long entry = transpositionTable.probe(position.getHashCode());
+		short move = entry == 0 ? 0 : TranspositionTable.getMove(entry);
+
+		// the entry may belong to another position with the same index
+		for (short legalMove : position.getAllMoves()) {
+			if (legalMove == move) {
+				return move;
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * Search the position with iterative deepening until the maximum depth is
+	 * reached or the deadline has passed.
+	 *
+	 * @param inputPosition: Position to search
+	 * @param deadline: System.currentTimeMillis() value at which the search is aborted
+	 *
+	 * @return one of the best moves found by the last completed iteration;
+	 * only plain minimax finds every best move, so only it chooses randomly
+	 * between equally good moves
+	 */
+	private short search(Position inputPosition, long deadline) {
+		this.deadline = deadline;
+		searchStartTime = System.currentTimeMillis();
+		stopped = false;
+		finished = false;
+		searching = true;
+		completedDepth = 0;
+
+		if (transpositionTable != null && tableAging) {
+			transpositionTable.newSearch();
+		}
+
+		// Lazy SMP: the helpers run the same iterative deepening on their own
+		// copy of the position, half of them one ply deeper, and share their
+		// results with the main search through the transposition table
+		Searcher[] helpers = new Searcher[threads - 1];
+		Thread[] helperThreads = new Thread[threads - 1];
+		this.helpers = helpers;
+
+		if (transpositionTable != null) {
+			for (int i = 0; i < helpers.length; i++) {
+				Searcher helper = new Searcher(inputPosition, moveOrderers[i + 1], true);
+				int depthOffset = i % 2 == 0 ? 1 : 0;
+
+				helpers[i] = helper;
+				helperThreads[i] = new Thread(() -> helper.iterativeDeepening(depthOffset), "MinimaxAI helper " + i);
+				helperThreads[i].setDaemon(true);
+				helperThreads[i].start();
+			}
+		}
+
+		Searcher searcher = new Searcher(inputPosition, moveOrderers[0], false);
+
+		searcher.iterativeDeepening(0);
+
+		finished = true;
+		searching = false;
+
+		SearchStatistics statistics = searcher.statistics;
+
+		for (int i = 0; i < helpers.length; i++) {
+			if (helperThreads[i] == null) {
+				continue;
+			}
+
+			try {
+				helperThreads[i].join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+
+			statistics.add(helpers[i].statistics);
+		}
+
+		statistics.setTime(System.currentTimeMillis() - searchStartTime);
+		searchStatistics = statistics;
+
+		visitedPositions += statistics.getNodes();
+		quiescencePositions += statistics.getQuiescenceNodes();
+
+		if (searcher.bestMoveCount == 0) {
+			short[] moves = inputPosition.getAllMoves();
+			return moves.length > 0 ? moves[0] : 0;
+		}
+
+		return searcher.bestMoves[r.nextInt(searcher.bestMoveCount)];
+	}
+
+	/**
+	 * The state of one search thread. The main search and every Lazy SMP
+	 * helper own a Searcher with a private copy of the position.
+	 */
+	private class Searcher {
+
+		private final Board position;
+
+		private final MoveOrderer moveOrderer;
+
+		private final Evaluator evaluator;
+
+		private final boolean helper;
+
+		private final SearchStatistics statistics = new SearchStatistics();
+
+		// number of stones on the board, to know when to probe the tablebase
+		private int pieceCount = 0;
+
+		// depth of the current iteration, which bounds the check extensions
+		private int rootDepth = 0;
+
+		// The best moves of the last completed iteration and of the current
+		// one, preallocated so that the root search does not box moves
+		private final short[] bestMoves = new short[MoveOrderer.MAX_MOVES];
+
+		private int bestMoveCount = 0;
+
+		private final short[] iterationBestMoves = new short[MoveOrderer.MAX_MOVES];
+
+		private int iterationBestMoveCount = 0;
+
+		Searcher(Position inputPosition, MoveOrderer moveOrderer, boolean helper) {
+			this.position = boardFactory.apply(new Position(inputPosition));
+			this.moveOrderer = moveOrderer;
+			this.evaluator = evaluatorFactory.get();
+			this.helper = helper;
+
+			evaluator.reset(position);
+
+			for (int sqi = 0; sqi < Chess.NUM_OF_SQUARES; sqi++) {
+				if (position.getStone(sqi) != Chess.NO_STONE) {
+					pieceCount++;
+				}
+			}
+		}
+
+		private void doMove(short move) throws IllegalMoveException {
+			evaluator.doMove(position, move);
+			position.doMove(move);
+			if (Move.isCapturing(move)) {
+				pieceCount--;
+			}
+		}
+
+		private void undoMove() {
+			if (Move.isCapturing(position.getLastShortMove())) {
+				pieceCount++;
+			}
+			position.undoMove();
+			evaluator.undoMove();
+		}
+
+		/**
+		 * @param ply: Distance from the root of the search
+		 *
+		 * @return the tablebase value of the position from the point of view
+		 * of the side to move, with the mate distance counted from the root,
+		 * or EndgameTablebase.NOT_FOUND
+		 */
+		private int probeTablebase(int ply) {
+			if (tablebase == null || pieceCount > tablebase.getMaxPieces()) {
+				return EndgameTablebase.NOT_FOUND;
+			}
+
+			int value = tablebase.getValue(position);
+			if (value == EndgameTablebase.NOT_FOUND || value == 0) {
+				return value;
+			}
+			return value > 0 ? value - ply : value + ply;
+		}
+
+		/**
+		 * @return the nodes of this search and of all helpers so far; the
+		 * counters of the running helpers are read without synchronization,
+		 * so they may be a little behind
+		 */
+		private long getTotalNodes() {
+			long nodes = statistics.getTotalNodes();
+			for (Searcher helper : helpers) {
+				if (helper != null) {
+					nodes += helper.statistics.getTotalNodes();
+				}
+			}
+			return nodes;
+		}
+
+		private boolean isStopped() {
+			return stopped || (helper && finished);
+		}
+
+		private boolean checkStopped() {
+			// Checking the clock is comparatively expensive, so only do it every 1024 nodes
+			if ((statistics.getTotalNodes() & 1023) == 0 && System.currentTimeMillis() >= deadline) {
+				stopped = true;
+			}
+			return isStopped();
+		}
+
+		/**
+		 * Deepen the search one ply at a time until the maximum depth is
+		 * reached, a mate is proven or the search is stopped.
+		 *
+		 * The best moves of the last completed iteration are left in bestMoves.
+		 *
+		 * @param depthOffset: Number of plies added to every iteration
+		 */
+		void iterativeDeepening(int depthOffset) {
+			moveOrderer.newSearch();
+
+			// Order the root moves once; afterwards the best move of each
+			// iteration is moved to the front
+			int moveCount = moveOrderer.generateMoves(position, 0, getHashMove());
+			short[] moves = new short[moveCount];
+			for (int i = 0; i < moveCount; i++) {
+				moves[i] = moveOrderer.nextMove(0, i);
+			}
+
+			bestMoveCount = 0;
+
+			int previousValue = 0;
+
+			for (int depth = 1 + depthOffset; depth <= maximumDepth; depth++) {
+				rootDepth = depth;
+
+				int value;
+				if (strategy == SearchStrategy.MINIMAX) {
+					value = searchRootMinimax(depth, moves);
+				} else {
+					value = searchRootAspiration(depth, moves, previousValue, bestMoveCount > 0);
+				}
+
+				// An aborted iteration is only used if nothing else is available
+				if (isStopped()) {
+					if (bestMoveCount == 0) {
+						keepIterationBestMoves();
 					}
-					return move;
+					break;
 				}
-				
+
+				keepIterationBestMoves();
+				previousValue = value;
+
+				statistics.iterationCompleted(depth, System.currentTimeMillis() - searchStartTime);
+
+				if (!helper) {
+					completedDepth = depth;
+
+					if (searchListener != null) {
+						searchListener.iterationCompleted(depth, value, getTotalNodes(),
+								System.currentTimeMillis() - searchStartTime, getPrincipalVariation(depth));
+					}
+				}
+
+				// A deeper search only finds the same mate, so stop right away
+				if (Math.abs(value) >= ChessAI.MATE_THRESHOLD) {
+					break;
+				}
+
+				// Search the best move of this iteration first in the next one
+				for (int i = 0; i < moves.length; i++) {
+					if (moves[i] == bestMoves[0]) {
+						moves[i] = moves[0];
+						moves[0] = bestMoves[0];
+						break;
+					}
+				}
+			}
+		}
+
+		private void keepIterationBestMoves() {
+			System.arraycopy(iterationBestMoves, 0, bestMoves, 0, iterationBestMoveCount);
+			bestMoveCount = iterationBestMoveCount;
+		}
+
+		/**
+		 * Search every root move with plain minimax.
+		 *
+		 * @return the value of the best moves, which are put in iterationBestMoves
+		 */
+		private int searchRootMinimax(int depth, short[] moves) {
+			iterationBestMoveCount = 0;
+
+			int sign = position.getToPlay() == player ? 1 : -1;
+
+			int bestValue = -ChessAI.MAX_VALUE;
+
+			for (short move : moves) {
+				try {
+					doMove(move);
+				} catch (IllegalMoveException e) {
+					e.printStackTrace();
+					return bestValue;
+				}
+
+				int value = sign * getValue(depth - 1, 1);
+
+				undoMove();
+
+				if (isStopped()) {
+					break;
+				}
+
 				if (value >= bestValue) {
 					if (value > bestValue) {
-						bestMoves.clear();
+						iterationBestMoveCount = 0;
 						bestValue = value;
 					}
-					
-					bestMoves.add(move);
+
+					iterationBestMoves[iterationBestMoveCount++] = move;
+				}
+
+				// no move can mate faster
+				if (value == ChessAI.MAX_VALUE - 1) {
+					break;
 				}
-				
-				position.undoMove();
 			}
+
+			return bestValue;
 		}
-		
-		if (player == Chess.WHITE)
-			System.out.print("Visited positions: " + visitedPositions + "; Maximum depth: " + maximumDepth + " ");
-		return bestMoves.get(r.nextInt(bestMoves.size()));
-	}
-	
-	
-	private int getValue(Position position, int maxDepth, int preValue) {
-		
-		visitedPositions++;
-		
-		if (transpositionTableEnabled) {
-			Node node = transpositionTable.get(position.getHashCode());
-			if (node != null && node.depth >= maxDepth) {
-				return node.value;
-			}
-		}
-		
-		int sign = position.getToPlay() == player ? 1 : -1;
-		
-		if (position.isTerminal()) {
-			int value = position.isMate() ? -sign * ChessAI.MAX_VALUE : 0;
-			
-			if (transpositionTableEnabled) {
-				transpositionTable.put(position.getHashCode(), new Node(Integer.MAX_VALUE, value));
-			}
-			
-			return value;
+
+		/**
+		 * Search the root with an aspiration window around the previous
+		 * iteration's value, widening it to the full window when the value
+		 * falls outside.
+		 *
+		 * @param aspiration: Whether previousValue comes from a completed iteration
+		 *
+		 * @return the value of the best move, which is put in iterationBestMoves
+		 */
+		private int searchRootAspiration(int depth, short[] moves, int previousValue, boolean aspiration) {
+			int alpha = -ChessAI.MAX_VALUE;
+			int beta = ChessAI.MAX_VALUE;
+
+			if (strategy == SearchStrategy.PRINCIPAL_VARIATION && aspiration) {
+				alpha = Math.max(previousValue - ASPIRATION_WINDOW, -ChessAI.MAX_VALUE);
+				beta = Math.min(previousValue + ASPIRATION_WINDOW, ChessAI.MAX_VALUE);
+			}
+
+			while (true) {
+				int value = searchRoot(depth, moves, alpha, beta);
+
+				if (isStopped()) {
+					return value;
+				}
+
+				if (value <= alpha && alpha > -ChessAI.MAX_VALUE) {
+					alpha = -ChessAI.MAX_VALUE;
+				} else if (value >= beta && beta < ChessAI.MAX_VALUE) {
+					beta = ChessAI.MAX_VALUE;
+				} else {
+					return value;
+				}
+			}
+		}
+
+		/**
+		 * Search every root move with alpha-beta.
+		 *
+		 * @return the value of the best move, which is put in iterationBestMoves
+		 */
+		private int searchRoot(int depth, short[] moves, int alpha, int beta) {
+			iterationBestMoveCount = 0;
+
+			int bestValue = -ChessAI.MAX_VALUE;
+
+			for (int i = 0; i < moves.length; i++) {
+				short move = moves[i];
+
+				try {
+					doMove(move);
+				} catch (IllegalMoveException e) {
+					e.printStackTrace();
+					return bestValue;
+				}
+
+				int value = searchChild(depth - 1, 1, alpha, beta, i == 0);
+
+				undoMove();
+
+				if (isStopped()) {
+					break;
+				}
+
+				if (i == 0 || value > bestValue) {
+					bestValue = value;
+					iterationBestMoves[0] = move;
+					iterationBestMoveCount = 1;
+
+					if (value > alpha) {
+						alpha = value;
+
+						if (alpha >= beta) {
+							break;
+						}
+					}
+				}
+			}
+
+			return bestValue;
 		}
-		
-		if (maxDepth <= 0) {
-			int value = sign * evaluate(position);
-			
-			if (transpositionTableEnabled) {
-				transpositionTable.put(position.getHashCode(), new Node(maxDepth, value));
+
+		/**
+		 * Search the position after a move from the point of view of the side
+		 * that made it. With principal variation search, all but the first
+		 * move are searched with a null window first and only re-searched
+		 * with the full window if they beat alpha.
+		 */
+		private int searchChild(int depth, int ply, int alpha, int beta, boolean firstMove) {
+			if (firstMove || strategy != SearchStrategy.PRINCIPAL_VARIATION) {
+				return -alphaBeta(depth, ply, -beta, -alpha, true);
+			}
+
+			int value = -alphaBeta(depth, ply, -alpha - 1, -alpha, true);
+
+			if (value > alpha && value < beta && !isStopped()) {
+				value = -alphaBeta(depth, ply, -beta, -alpha, true);
 			}
-			
+
 			return value;
 		}
-		
-		int bestValue = -sign * ChessAI.MAX_VALUE;
-		
-		for (short move : getMoves(position)) {
-			
-			// Alpha-Beta-Pruning
-			// a > b <==> -a < -b
-			if (alphaBetaPruningEnabled && sign * preValue < sign * bestValue) {
-				return bestValue;
-			}
-			
-			try {
-				position.doMove(move);
-			} catch (IllegalMoveException e) {
-				e.printStackTrace();
+
+		/**
+		 * Negamax alpha-beta search.
+		 *
+		 * @param depth: Remaining depth
+		 * @param ply: Distance from the root of the search
+		 * @param alpha: Value the side to move is already guaranteed
+		 * @param beta: Value the opponent is already guaranteed
+		 * @param nullMoveAllowed: False right after a null move, so that a side never passes twice
+		 *
+		 * @return the value of the position from the point of view of the side to move
+		 */
+		private int alphaBeta(int depth, int ply, int alpha, int beta, boolean nullMoveAllowed) {
+
+			statistics.nodes++;
+
+			if (checkStopped()) {
 				return 0;
 			}
-			
-			// Math.min(a, b) <==> -Math.max(-a, -b)
-			// careful about the overflow
-			
-			bestValue = sign * Math.max(sign * bestValue, sign * getValue(position, maxDepth - 1, bestValue));
-			position.undoMove();
+
+			int tablebaseValue = probeTablebase(ply);
+			if (tablebaseValue != EndgameTablebase.NOT_FOUND) {
+				return tablebaseValue;
+			}
+
+			// Mate distance pruning: no mate found here can be faster than
+			// mating right away, or slower than being mated right away
+			alpha = Math.max(alpha, -ChessAI.MAX_VALUE + ply);
+			beta = Math.min(beta, ChessAI.MAX_VALUE - ply - 1);
+			if (alpha >= beta) {
+				return alpha;
+			}
+
+			if (depth <= 0 || ply >= MoveOrderer.MAX_PLY) {
+				if (options.isQuiescenceSearch() && ply < MoveOrderer.MAX_PLY) {
+					return quiesce(ply, alpha, beta);
+				}
+
+				if (position.isTerminal()) {
+					return position.isMate() ? -ChessAI.MAX_VALUE + ply : 0;
+				}
+
+				return evaluator.evaluate(position);
+			}
+
+			short hashMove = 0;
+
+			if (transpositionTable != null) {
+				long entry = transpositionTable.probe(position.getHashCode());
+				statistics.transpositionTableProbes++;
+				if (entry != 0) {
+					statistics.transpositionTableHits++;
+					hashMove = TranspositionTable.getMove(entry);
+
+					if (TranspositionTable.getDepth(entry) >= depth) {
+						int value = fromTable(TranspositionTable.getScore(entry), ply);
+						int bound = TranspositionTable.getBound(entry);
+
+						if (bound == TranspositionTable.EXACT
+								|| (bound == TranspositionTable.LOWER_BOUND && value >= beta)
+								|| (bound == TranspositionTable.UPPER_BOUND && value <= alpha)) {
+							statistics.transpositionTableCutoffs++;
+							return value;
+						}
+					}
+				}
+			}
+
+			boolean inCheck = position.isCheck();
+
+			// Null move pruning: if passing still fails high, so would the best move
+			if (options.isNullMovePruning() && nullMoveAllowed && !inCheck
+					&& depth > NULL_MOVE_REDUCTION && beta < ChessAI.MATE_THRESHOLD && hasPieces()) {
+				position.doNullMove();
+
+				int value = -alphaBeta(depth - 1 - NULL_MOVE_REDUCTION, ply + 1, -beta, -beta + 1, false);
+
+				position.undoNullMove();
+
+				if (isStopped()) {
+					return 0;
+				}
+
+				// A mate found after passing is not a real one, so only report beta
+				if (value >= beta) {
+					return beta;
+				}
+			}
+
+			int moveCount = moveOrderer.generateMoves(position, ply, hashMove);
+
+			if (moveCount == 0) {
+				int value = inCheck ? -ChessAI.MAX_VALUE + ply : 0;
+
+				if (transpositionTable != null) {
+					transpositionTable.store(position.getHashCode(), TranspositionTable.MAX_DEPTH,
+							toTable(value, ply), TranspositionTable.EXACT, (short) 0);
+				}
+
+				return value;
+			}
+
+			int originalAlpha = alpha;
+
+			int bestValue = -ChessAI.MAX_VALUE;
+
+			short bestMove = 0;
+
+			for (int i = 0; i < moveCount; i++) {
+				short move = moveOrderer.nextMove(ply, i);
+
+				try {
+					doMove(move);
+				} catch (IllegalMoveException e) {
+					e.printStackTrace();
+					return 0;
+				}
+
+				boolean givesCheck = position.isCheck();
+
+				int newDepth = depth - 1;
+				if (options.isCheckExtensions() && givesCheck && ply < 2 * rootDepth) {
+					newDepth++;
+				}
+
+				int value;
+
+				// Late move reductions: quiet moves this late in the ordering
+				// rarely beat alpha, so try them with less depth first
+				if (options.isLateMoveReductions() && i >= FULL_DEPTH_MOVES && depth >= REDUCTION_LIMIT
+						&& !inCheck && !givesCheck && !Move.isCapturing(move) && !Move.isPromotion(move)) {
+					int reduction = i >= 2 * FULL_DEPTH_MOVES ? 2 : 1;
+
+					value = -alphaBeta(newDepth - reduction, ply + 1, -alpha - 1, -alpha, true);
+
+					if (value > alpha && !isStopped()) {
+						value = searchChild(newDepth, ply + 1, alpha, beta, false);
+					}
+				} else {
+					value = searchChild(newDepth, ply + 1, alpha, beta, i == 0);
+				}
+
+				undoMove();
+
+				// The value of an aborted search is meaningless and must not be stored
+				if (isStopped()) {
+					return 0;
+				}
+
+				if (i == 0 || value > bestValue) {
+					bestValue = value;
+					bestMove = move;
+
+					if (value > alpha) {
+						alpha = value;
+
+						if (alpha >= beta) {
+							statistics.cutoff(i);
+							moveOrderer.cutoff(position, ply, move, depth);
+							break;
+						}
+					}
+				}
+			}
+
+			if (transpositionTable != null) {
+				int bound = bestValue >= beta ? TranspositionTable.LOWER_BOUND
+						: bestValue <= originalAlpha ? TranspositionTable.UPPER_BOUND
+						: TranspositionTable.EXACT;
+				transpositionTable.store(position.getHashCode(), depth, toTable(bestValue, ply), bound, bestMove);
+			}
+
+			return bestValue;
 		}
 
-		if (transpositionTableEnabled) {
-			transpositionTable.put(position.getHashCode(), new Node(maxDepth, bestValue));
+		/**
+		 * Plain minimax search.
+		 *
+		 * @param maxDepth: Remaining depth
+		 * @param ply: Distance from the root of the search
+		 *
+		 * @return the value of the position from the point of view of the AI's player
+		 */
+		private int getValue(int maxDepth, int ply) {
+
+			statistics.nodes++;
+
+			if (checkStopped()) {
+				return 0;
+			}
+
+			int sign = position.getToPlay() == player ? 1 : -1;
+
+			int tablebaseValue = probeTablebase(ply);
+			if (tablebaseValue != EndgameTablebase.NOT_FOUND) {
+				return sign * tablebaseValue;
+			}
+
+			// Entries are stored from the point of view of the side to move
+			if (transpositionTable != null) {
+				long entry = transpositionTable.probe(position.getHashCode());
+				statistics.transpositionTableProbes++;
+				if (entry != 0) {
+					statistics.transpositionTableHits++;
+
+					if (TranspositionTable.getDepth(entry) >= maxDepth
+							&& TranspositionTable.getBound(entry) == TranspositionTable.EXACT) {
+						statistics.transpositionTableCutoffs++;
+						return sign * fromTable(TranspositionTable.getScore(entry), ply);
+					}
+				}
+			}
+
+			if (position.isTerminal()) {
+				int value = position.isMate() ? -sign * (ChessAI.MAX_VALUE - ply) : 0;
+
+				if (transpositionTable != null) {
+					transpositionTable.store(position.getHashCode(), TranspositionTable.MAX_DEPTH,
+							toTable(sign * value, ply), TranspositionTable.EXACT, (short) 0);
+				}
+
+				return value;
+			}
+
+			if (maxDepth <= 0 || ply >= MoveOrderer.MAX_PLY) {
+				int value;
+
+				if (options.isQuiescenceSearch() && ply < MoveOrderer.MAX_PLY) {
+					value = sign * quiesce(ply, -ChessAI.MAX_VALUE, ChessAI.MAX_VALUE);
+
+					if (isStopped()) {
+						return 0;
+					}
+				} else {
+					value = sign * evaluator.evaluate(position);
+				}
+
+				if (transpositionTable != null) {
+					transpositionTable.store(position.getHashCode(), maxDepth,
+							toTable(sign * value, ply), TranspositionTable.EXACT, (short) 0);
+				}
+
+				return value;
+			}
+
+			int bestValue = -sign * ChessAI.MAX_VALUE;
+
+			short bestMove = 0;
+
+			int moveCount = moveOrderer.generateMoves(position, ply, (short) 0);
+
+			for (int i = 0; i < moveCount; i++) {
+				short move = moveOrderer.nextMove(ply, i);
+
+				try {
+					doMove(move);
+				} catch (IllegalMoveException e) {
+					e.printStackTrace();
+					return 0;
+				}
+
+				int value = getValue(maxDepth - 1, ply + 1);
+				undoMove();
+
+				// The value of an aborted search is meaningless and must not be stored
+				if (isStopped()) {
+					return 0;
+				}
+
+				// a > b <==> -a < -b
+				if (i == 0 || sign * value > sign * bestValue) {
+					bestValue = value;
+					bestMove = move;
+				}
+			}
+
+			if (transpositionTable != null) {
+				transpositionTable.store(position.getHashCode(), maxDepth,
+						toTable(sign * bestValue, ply), TranspositionTable.EXACT, bestMove);
+			}
+
+			return bestValue;
 		}
-		
-		return bestValue;
-	}
-	
-	private List<Short> getMoves(Position position) {
-		int sign = position.getToPlay() == player ? 1 : -1;
-		
-		List<Short> moves = new ArrayList<>();
-		
-		for (short move : position.getAllMoves()) {
-			moves.add(move);
+
+		/**
+		 * Search captures and promotions (or every evasion when in check)
+		 * until the position is quiet. The side to move may always "stand
+		 * pat" on the static evaluation instead of capturing.
+		 *
+		 * @param ply: Distance from the root of the search
+		 * @param alpha: Value the side to move is already guaranteed
+		 * @param beta: Value the opponent is already guaranteed
+		 *
+		 * @return the value of the position from the point of view of the side to move
+		 */
+		private int quiesce(int ply, int alpha, int beta) {
+
+			statistics.quiescenceNodes++;
+
+			if (checkStopped()) {
+				return 0;
+			}
+
+			boolean inCheck = position.isCheck();
+
+			int standPat = evaluator.evaluate(position);
+
+			if (!inCheck) {
+				if (standPat >= beta || ply >= MoveOrderer.MAX_PLY - 1) {
+					return standPat;
+				}
+				alpha = Math.max(alpha, standPat);
+			}
+
+			int moveCount = moveOrderer.generateMoves(position, ply, (short) 0);
+
+			if (moveCount == 0) {
+				return inCheck ? -ChessAI.MAX_VALUE + ply : 0;
+			}
+
+			if (inCheck && ply >= MoveOrderer.MAX_PLY - 1) {
+				return standPat;
+			}
+
+			int bestValue = inCheck ? -ChessAI.MAX_VALUE + ply : standPat;
+
+			for (int i = 0; i < moveCount; i++) {
+				short move = moveOrderer.nextMove(ply, i);
+
+				if (!inCheck) {
+					// Captures and promotions are ordered first, so the rest is quiet
+					if (!Move.isCapturing(move) && !Move.isPromotion(move)) {
+						break;
+					}
+
+					// Delta pruning: skip captures that cannot raise alpha
+					if (!Move.isPromotion(move)) {
+						int victim = Move.isEPMove(move) ? Chess.PAWN : position.getPiece(Move.getToSqi(move));
+						if (standPat + PIECE_VALUES[victim] + DELTA_MARGIN <= alpha) {
+							continue;
+						}
+					}
+				}
+
+				try {
+					doMove(move);
+				} catch (IllegalMoveException e) {
+					e.printStackTrace();
+					return 0;
+				}
+
+				int value = -quiesce(ply + 1, -beta, -alpha);
+				undoMove();
+
+				if (isStopped()) {
+					return 0;
+				}
+
+				if (value > bestValue) {
+					bestValue = value;
+
+					if (value > alpha) {
+						alpha = value;
+
+						if (alpha >= beta) {
+							break;
+						}
+					}
+				}
+			}
+
+			return bestValue;
+		}
+
+		/**
+		 * Mate values count the plies from the root, but the table is shared
+		 * by searches from other roots, so it counts them from the entry's
+		 * position instead.
+		 */
+		private int toTable(int value, int ply) {
+			if (value >= ChessAI.MATE_THRESHOLD) {
+				return value + ply;
+			}
+			if (value <= -ChessAI.MATE_THRESHOLD) {
+				return value - ply;
+			}
+			return value;
 		}
-		
-		if (transpositionTableEnabled) {
-			Collections.sort(moves, new Comparator<Short>() {
 
-				@Override
-				public int compare(Short o1, Short o2) {
-					Node n1 = transpositionTable.get(o1);
-					Node n2 = transpositionTable.get(o2);
-					int i1 = n1 == null ? 0 : n1.value;
-					int i2 = n2 == null ? 0 : n1.value;
-					return sign * (i2 - i1);
+		private int fromTable(int value, int ply) {
+			if (value >= ChessAI.MATE_THRESHOLD) {
+				return value - ply;
+			}
+			if (value <= -ChessAI.MATE_THRESHOLD) {
+				return value + ply;
+			}
+			return value;
+		}
+
+		/**
+		 * @return whether the side to move has a piece other than pawns and the king
+		 */
+		private boolean hasPieces() {
+			int color = position.getToPlay();
+			for (int sqi = 0; sqi < Chess.NUM_OF_SQUARES; sqi++) {
+				int piece = position.getPiece(sqi);
+				if (piece != Chess.NO_PIECE && piece != Chess.PAWN && piece != Chess.KING
+						&& position.getColor(sqi) == color) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		/**
+		 * Follow the best move through the hash moves of the transposition
+		 * table, as far as they are legal.
+		 *
+		 * @param depth: Maximum length of the variation
+		 *
+		 * @return the best move of the last iteration and the expected continuation
+		 */
+		private short[] getPrincipalVariation(int depth) {
+			short[] variation = new short[depth];
+			int length = 0;
+
+			short[] legalMoves = new short[MoveOrderer.MAX_MOVES];
+
+			short move = bestMoves[0];
+
+			while (move != 0 && length < depth) {
+				try {
+					position.doMove(move);
+				} catch (IllegalMoveException e) {
+					break;
 				}
-				
-			});
+				variation[length++] = move;
+
+				short hashMove = getHashMove();
+				move = 0;
+
+				// the entry may belong to another position with the same index
+				int moveCount = position.getMoves(legalMoves);
+				for (int i = 0; i < moveCount; i++) {
+					if (legalMoves[i] == hashMove) {
+						move = hashMove;
+						break;
+					}
+				}
+			}
+
+			for (int i = 0; i < length; i++) {
+				position.undoMove();
+			}
+
+			return Arrays.copyOf(variation, length);
+		}
+
+		private short getHashMove() {
+			if (transpositionTable == null) {
+				return 0;
+			}
+			long entry = transpositionTable.probe(position.getHashCode());
+			return entry == 0 ? 0 : TranspositionTable.getMove(entry);
 		}
-		
-		return moves;
 	}
 }
@@ -0,0 +1,51 @@
+package chai;
+
+import chesspresso.Chess;
+import chesspresso.move.Move;
+import chesspresso.position.Position;
+
+/**
+ * Moves in coordinate notation as used by UCI, e.g. e2e4, e1g1 for white's
+ * short castle and e7e8q for a promotion.
+ */
+class MoveNotation {
+
+	// promotion pieces by chesspresso piece - 1: knight, bishop, rook, queen
+	private static final String PROMOTION_PIECES = "nbrq";
+
+	/**
+	 * @return the legal move of the position the text stands for, or 0 if there is none
+	 */
+	static short parse(Position position, String text) {
+		if (text.length() < 4) {
+			return 0;
+		}
+
+		int fromSqi = Chess.strToSqi(text.substring(0, 2));
+		int toSqi = Chess.strToSqi(text.substring(2, 4));
+		int promotion = text.length() > 4 ? PROMOTION_PIECES.indexOf(Character.toLowerCase(text.charAt(4))) + 1 : 0;
+
+		for (short move : position.getAllMoves()) {
+			if (Move.getFromSqi(move) == fromSqi && Move.getToSqi(move) == toSqi
+					&& (Move.isPromotion(move) ? Move.getPromotionPiece(move) : 0) == promotion) {
+				return move;
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * @return the move in coordinate notation, or 0000 for no move
+	 */
+	static String format(short move) {
+		if (move == 0) {
+			return "0000";
+		}
+
+		String text = Chess.sqiToStr(Move.getFromSqi(move)) + Chess.sqiToStr(Move.getToSqi(move));
+		if (Move.isPromotion(move)) {
+			text += PROMOTION_PIECES.charAt(Move.getPromotionPiece(move) - 1);
+		}
+		return text;
+	}
+}
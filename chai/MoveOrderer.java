@@ -0,0 +1,175 @@
+package chai;
+
+import java.util.Arrays;
+
+import chesspresso.Chess;
+import chesspresso.move.Move;
+
+/**
+ * Orders the moves of every ply of a search: the hash move first, then
+ * captures and promotions by MVV-LVA, then the two killer moves of the ply
+ * and finally the quiet moves by their history score.
+ *
+ * All buffers are preallocated per ply, and the moves are picked one at a
+ * time by a selection sort, so nothing is sorted after a cutoff.
+ */
+class MoveOrderer {
+
+	static final int MAX_PLY = 128;
+
+	static final int MAX_MOVES = 256;
+
+	private static final int HASH_MOVE_SCORE = 1 << 30;
+
+	private static final int CAPTURE_SCORE = 1 << 29;
+
+	private static final int KILLER_SCORE = 1 << 28;
+
+	// indexed by chesspresso piece: none, knight, bishop, rook, queen, pawn, king
+	private static final int[] PIECE_ORDER = {0, 2, 3, 4, 5, 1, 6};
+
+	private final short[][] moves = new short[MAX_PLY][MAX_MOVES];
+
+	private final int[][] scores = new int[MAX_PLY][MAX_MOVES];
+
+	private final int[] moveCounts = new int[MAX_PLY];
+
+	private final short[][] killers = new short[MAX_PLY][2];
+
+	// indexed by color, from square and to square
+	private final int[] history = new int[2 * 64 * 64];
+
+	/**
+	 * Generate and score the legal moves of the position.
+	 *
+	 * @param position: Position at the given ply
+	 * @param ply: Distance from the root of the search
+	 * @param hashMove: Best move stored in the transposition table, or 0
+	 *
+	 * @return the number of legal moves
+	 */
+	int generateMoves(Board position, int ply, short hashMove) {
+		short[] plyMoves = moves[ply];
+		int[] plyScores = scores[ply];
+
+		int moveCount = position.getMoves(plyMoves);
+
+		for (int i = 0; i < moveCount; i++) {
+			plyScores[i] = score(position, ply, plyMoves[i], hashMove);
+		}
+
+		moveCounts[ply] = moveCount;
+
+		return moveCount;
+	}
+
+	/**
+	 * @param ply: Distance from the root of the search
+	 * @param index: Number of moves already returned for this ply
+	 *
+	 * @return the highest scored move that has not been returned yet
+	 */
+	short nextMove(int ply, int index) {
+		short[] plyMoves = moves[ply];
+		int[] plyScores = scores[ply];
+
+		int best = index;
+		for (int i = index + 1; i < moveCounts[ply]; i++) {
+			if (plyScores[i] > plyScores[best]) {
+				best = i;
+			}
+		}
+
+		short move = plyMoves[best];
+		int score = plyScores[best];
+
+		plyMoves[best] = plyMoves[index];
+		plyScores[best] = plyScores[index];
+		plyMoves[index] = move;
+		plyScores[index] = score;
+
+		return move;
+	}
+
+	/**
+	 * Remember a move that caused a cutoff. Captures and promotions are
+	 * already ordered first, so only quiet moves become killers.
+	 *
+	 * @param position: Position in which the move was played
+	 * @param ply: Distance from the root of the search
+	 * @param move: Move that caused the cutoff
+	 * @param depth: Remaining depth of the search
+	 */
+	void cutoff(Board position, int ply, short move, int depth) {
+		if (Move.isCapturing(move) || Move.isPromotion(move)) {
+			return;
+		}
+
+		short[] plyKillers = killers[ply];
+		if (plyKillers[0] != move) {
+			plyKillers[1] = plyKillers[0];
+			plyKillers[0] = move;
+		}
+
+		int index = getHistoryIndex(position.getToPlay(), move);
+		history[index] += depth * depth;
+
+		// keep the history scores below the killer moves
+		if (history[index] >= KILLER_SCORE) {
+			ageHistory();
+		}
+	}
+
+	/**
+	 * Forget the killer moves and halve the history scores before a new search.
+	 */
+	void newSearch() {
+		for (short[] plyKillers : killers) {
+			Arrays.fill(plyKillers, (short) 0);
+		}
+		ageHistory();
+	}
+
+	private int score(Board position, int ply, short move, short hashMove) {
+		if (move == hashMove) {
+			return HASH_MOVE_SCORE;
+		}
+
+		if (Move.isCapturing(move) || Move.isPromotion(move)) {
+			// Most Valuable Victim - Least Valuable Attacker
+			int score = CAPTURE_SCORE;
+
+			if (Move.isCapturing(move)) {
+				int victim = Move.isEPMove(move) ? Chess.PAWN : position.getPiece(Move.getToSqi(move));
+				int attacker = position.getPiece(Move.getFromSqi(move));
+				score += PIECE_ORDER[victim] * 8 - PIECE_ORDER[attacker];
+			}
+
+			if (Move.isPromotion(move)) {
+				score += PIECE_ORDER[Move.getPromotionPiece(move)] * 8;
+			}
+
+			return score;
+		}
+
+		if (move == killers[ply][0]) {
+			return KILLER_SCORE + 1;
+		}
+
+		if (move == killers[ply][1]) {
+			return KILLER_SCORE;
+		}
+
+		return history[getHistoryIndex(position.getToPlay(), move)];
+	}
+
+	private void ageHistory() {
+		for (int i = 0; i < history.length; i++) {
+			history[i] >>= 1;
+		}
+	}
+
+	private static int getHistoryIndex(int color, short move) {
+		return (color << 12) | (Move.getFromSqi(move) << 6) | Move.getToSqi(move);
+	}
+}
@@ -0,0 +1,251 @@
+package chai;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.ToLongFunction;
+
+import chesspresso.move.IllegalMoveException;
+import chesspresso.move.Move;
+import chesspresso.position.Position;
+
+/**
+ * An opening book in the Polyglot file format: 16-byte big-endian entries
+ * (key, move, weight, learn) sorted by key. The file is memory-mapped and
+ * only read with absolute accesses, so one book can be shared by any number
+ * of AIs and threads without copying it.
+ *
+ * Polyglot books key their positions with the Polyglot random numbers, so
+ * a book is opened with a PolyglotKey. The book builder in main writes
+ * such books when it is given the random numbers, and otherwise keys the
+ * positions by chesspresso's hash code; only withChesspressoKeys reads
+ * those, and no other tool does.
+ */
+public class OpeningBook {
+
+	private static final int ENTRY_SIZE = 16;
+
+	private static final int MAX_WEIGHT = 0xFFFF;
+
+	private final ByteBuffer entries;
+
+	private final int entryCount;
+
+	private final ToLongFunction<Position> keyFunction;
+
+	/**
+	 * @param file: Polyglot book
+	 * @param key: Key of the random numbers the book was made with
+	 */
+	public OpeningBook(Path file, PolyglotKey key) throws IOException {
+		this(file, (ToLongFunction<Position>) key);
+	}
+
+	/**
+	 * Open a book written by main without Polyglot random numbers, whose
+	 * positions are keyed by Position.getHashCode. A real Polyglot book
+	 * opened this way never finds a position.
+	 */
+	public static OpeningBook withChesspressoKeys(Path file) throws IOException {
+		return new OpeningBook(file, Position::getHashCode);
+	}
+
+	private OpeningBook(Path file, ToLongFunction<Position> keyFunction) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			long size = channel.size();
+			if (size % ENTRY_SIZE != 0 || size > Integer.MAX_VALUE) {
+				throw new IOException("Not a Polyglot book: " + file);
+			}
+
+			// the mapping stays valid after the channel is closed
+			entries = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+			entryCount = (int) (size / ENTRY_SIZE);
+		}
+		this.keyFunction = keyFunction;
+	}
+
+	public int getEntryCount() {
+		return entryCount;
+	}
+
+	/**
+	 * Choose one of the book moves of the position, with a probability
+	 * proportional to its weight.
+	 *
+	 * @param position: Position to look up
+	 * @param random: Source of randomness of the caller
+	 *
+	 * @return a legal book move, or 0 if the position is not in the book
+	 */
+	public short getMove(Position position, Random random) {
+		long key = keyFunction.applyAsLong(position);
+
+		int first = findFirst(key);
+
+		int totalWeight = 0;
+		for (int i = first; i < entryCount && getKey(i) == key; i++) {
+			totalWeight += getWeight(i);
+		}
+
+		if (totalWeight == 0) {
+			return 0;
+		}
+
+		int choice = random.nextInt(totalWeight);
+		for (int i = first; ; i++) {
+			choice -= getWeight(i);
+			if (choice < 0) {
+				return toMove(position, getBookMove(i));
+			}
+		}
+	}
+
+	/**
+	 * @return the index of the first entry whose key is not less than the
+	 * given one; keys are compared unsigned, as Polyglot sorts them
+	 */
+	private int findFirst(long key) {
+		int low = 0;
+		int high = entryCount;
+
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (Long.compareUnsigned(getKey(middle), key) < 0) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+
+		return low;
+	}
+
+	private long getKey(int index) {
+		return entries.getLong(index * ENTRY_SIZE);
+	}
+
+	private int getBookMove(int index) {
+		return entries.getShort(index * ENTRY_SIZE + 8) & 0xFFFF;
+	}
+
+	private int getWeight(int index) {
+		return entries.getShort(index * ENTRY_SIZE + 10) & 0xFFFF;
+	}
+
+	/**
+	 * Find the legal move of the position that a Polyglot move stands for.
+	 *
+	 * @return the chesspresso move, or 0 if there is no such legal move
+	 */
+	private static short toMove(Position position, int bookMove) {
+		for (short move : position.getAllMoves()) {
+			if (toBookMove(move) == bookMove) {
+				return move;
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * Encode a move as Polyglot does: to square in bits 0-5, from square in
+	 * bits 6-11, promotion piece in bits 12-14, and castling as the king
+	 * taking its own rook.
+	 */
+	private static int toBookMove(short move) {
+		int fromSqi = Move.getFromSqi(move);
+		int toSqi = Move.getToSqi(move);
+
+		if (Move.isShortCastle(move)) {
+			toSqi = fromSqi + 3;
+		} else if (Move.isLongCastle(move)) {
+			toSqi = fromSqi - 4;
+		}
+
+		// chesspresso numbers the promotion pieces like Polyglot does
+		int promotion = Move.isPromotion(move) ? Move.getPromotionPiece(move) : 0;
+
+		return promotion << 12 | fromSqi << 6 | toSqi;
+	}
+
+	/**
+	 * Build a book from a text file with one opening line per row, in
+	 * coordinate notation from the start position, e.g. "e2e4 e7e5 g1f3".
+	 * The weight of a book move is the number of lines that play it.
+	 *
+	 * Without the Polyglot random numbers, positions are keyed by
+	 * chesspresso's hash code, and the book can only be opened with
+	 * withChesspressoKeys.
+	 *
+	 * Usage: OpeningBook lines-file book-file [polyglot-random-file]
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length < 2) {
+			System.out.println("Usage: OpeningBook lines-file book-file [polyglot-random-file]");
+			return;
+		}
+
+		ToLongFunction<Position> keyFunction = args.length > 2
+				? PolyglotKey.load(Paths.get(args[2]))
+				: Position::getHashCode;
+
+		Map<Long, Map<Integer, Integer>> weights = new HashMap<>();
+
+		for (String line : Files.readAllLines(Paths.get(args[0]))) {
+			Position position = Position.createInitialPosition();
+
+			for (String token : line.trim().split("\\s+")) {
+				if (token.isEmpty()) {
+					continue;
+				}
+
+				short move = MoveNotation.parse(position, token);
+				if (move == 0) {
+					System.out.println("Illegal move " + token + " in line: " + line);
+					break;
+				}
+
+				weights.computeIfAbsent(keyFunction.applyAsLong(position), key -> new HashMap<>())
+						.merge(toBookMove(move), 1, Integer::sum);
+
+				try {
+					position.doMove(move);
+				} catch (IllegalMoveException e) {
+					e.printStackTrace();
+					break;
+				}
+			}
+		}
+
+		List<Long> keys = new ArrayList<>(weights.keySet());
+		keys.sort(Long::compareUnsigned);
+
+		int entries = 0;
+		try (OutputStream file = Files.newOutputStream(Paths.get(args[1]));
+				DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file))) {
+			for (long key : keys) {
+				for (Map.Entry<Integer, Integer> entry : weights.get(key).entrySet()) {
+					out.writeLong(key);
+					out.writeShort(entry.getKey());
+					out.writeShort(Math.min(entry.getValue(), MAX_WEIGHT));
+					out.writeInt(0);
+					entries++;
+				}
+			}
+		}
+
+		System.out.println("Wrote " + entries + " entries for " + keys.size() + " positions"
+				+ (args.length > 2 ? "" : " with chesspresso keys"));
+	}
+}
@@ -0,0 +1,320 @@
+package chai;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+
+import chesspresso.move.IllegalMoveException;
+import chesspresso.move.Move;
+import chesspresso.position.Position;
+
+/**
+ * Counts the leaf nodes of the legal move tree to a fixed depth, which
+ * checks the move generation against known counts and measures its speed.
+ *
+ * The static perft methods make every move down to the leaves. A Perft
+ * instance counts faster: the moves at the last ply are counted rather
+ * than made (bulk counting), the counts of subtrees are cached by hash
+ * code, and the moves at the root are counted on several threads.
+ *
+ * Usage: Perft depth [fen|startpos] [threads] [hash megabytes] [divide]
+ *
+ * divide prints the count of every root move, to find the move a wrong
+ * count comes from by comparing with another engine.
+ */
+public class Perft {
+
+	private final Function<Position, ? extends Board> boardFactory;
+
+	private final int threads;
+
+	// null if subtree counts are not cached
+	private final PerftTable table;
+
+	/**
+	 * @param boardFactory: Creates the boards to count on
+	 * @param threads: Number of threads the root moves are counted on
+	 * @param megabytes: Size of the table of subtree counts, or 0 for none
+	 */
+	public Perft(Function<Position, ? extends Board> boardFactory, int threads, int megabytes) {
+		this.boardFactory = boardFactory;
+		this.threads = threads;
+		this.table = megabytes > 0 ? new PerftTable(megabytes) : null;
+	}
+
+	/**
+	 * @param position: Position to count from; it is unchanged afterwards
+	 * @param depth: Number of plies, at least 1
+	 *
+	 * @return the number of legal move sequences of the given length
+	 */
+	public long count(Position position, int depth) throws InterruptedException {
+		long nodes = 0;
+		for (long moveNodes : divide(position, depth)[1]) {
+			nodes += moveNodes;
+		}
+		return nodes;
+	}
+
+	/**
+	 * Count the subtree of every root move, each on the next free thread.
+	 *
+	 * @param position: Position to count from; it is unchanged afterwards
+	 * @param depth: Number of plies, at least 1
+	 *
+	 * @return the legal root moves in the first array, and the number of
+	 * move sequences of the given length that start with each of them in the
+	 * second
+	 */
+	public long[][] divide(Position position, int depth) throws InterruptedException {
+		Board root = boardFactory.apply(new Position(position));
+		short[] moves = new short[MoveOrderer.MAX_MOVES];
+		int moveCount = root.getMoves(moves);
+
+		long[][] result = new long[2][moveCount];
+		List<Future<Long>> counts = new ArrayList<>();
+
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+
+		try {
+			for (int i = 0; i < moveCount; i++) {
+				short move = moves[i];
+				result[0][i] = move;
+
+				counts.add(pool.submit(() -> {
+					// every thread counts on a board of its own
+					Board board = boardFactory.apply(root.toPosition());
+					board.doMove(move);
+					return count(board, depth - 1, new short[depth][MoveOrderer.MAX_MOVES]);
+				}));
+			}
+
+			for (int i = 0; i < moveCount; i++) {
+				result[1][i] = counts.get(i).get();
+			}
+		} catch (ExecutionException e) {
+			throw new IllegalStateException("Counting a root move failed", e.getCause());
+		} finally {
+			pool.shutdownNow();
+		}
+
+		return result;
+	}
+
+	/**
+	 * @param moves: A move buffer for every remaining depth
+	 */
+	private long count(Board board, int depth, short[][] moves) throws IllegalMoveException {
+		if (depth == 0) {
+			return 1;
+		}
+
+		short[] depthMoves = moves[depth];
+		int moveCount = board.getMoves(depthMoves);
+
+		// the moves are legal, so the leaves need not be made
+		if (depth == 1) {
+			return moveCount;
+		}
+
+		long hashCode = board.getHashCode();
+		if (table != null) {
+			long nodes = table.get(hashCode, depth);
+			if (nodes >= 0) {
+				return nodes;
+			}
+		}
+
+		long nodes = 0;
+
+		for (int i = 0; i < moveCount; i++) {
+			board.doMove(depthMoves[i]);
+			nodes += count(board, depth - 1, moves);
+			board.undoMove();
+		}
+
+		if (table != null) {
+			table.put(hashCode, depth, nodes);
+		}
+
+		return nodes;
+	}
+
+	/**
+	 * @param position: Position to count from; it is unchanged afterwards
+	 * @param depth: Number of plies
+	 *
+	 * @return the number of legal move sequences of the given length
+	 */
+	public static long perft(Position position, int depth) {
+		if (depth == 0) {
+			return 1;
+		}
+
+		long nodes = 0;
+
+		for (short move : position.getAllMoves()) {
+			try {
+				position.doMove(move);
+			} catch (IllegalMoveException e) {
+				e.printStackTrace();
+				return nodes;
+			}
+
+			if (!Move.isEPMove(move) || !isOwnKingInCheck(position)) {
+				nodes += perft(position, depth - 1);
+			}
+			position.undoMove();
+		}
+
+		return nodes;
+	}
+
+	/**
+	 * @param board: Board to count from; it is unchanged afterwards
+	 * @param depth: Number of plies
+	 *
+	 * @return the number of legal move sequences of the given length
+	 */
+	public static long perft(Board board, int depth) {
+		return perft(board, depth, new short[depth + 1][MoveOrderer.MAX_MOVES]);
+	}
+
+	/**
+	 * @param moves: A move buffer for every remaining depth
+	 */
+	private static long perft(Board board, int depth, short[][] moves) {
+		if (depth == 0) {
+			return 1;
+		}
+
+		short[] depthMoves = moves[depth];
+		int moveCount = board.getMoves(depthMoves);
+
+		long nodes = 0;
+
+		for (int i = 0; i < moveCount; i++) {
+			try {
+				board.doMove(depthMoves[i]);
+			} catch (IllegalMoveException e) {
+				e.printStackTrace();
+				return nodes;
+			}
+
+			nodes += perft(board, depth - 1, moves);
+			board.undoMove();
+		}
+
+		return nodes;
+	}
+
+	/**
+	 * chesspresso generates en passant captures that uncover an attack on
+	 * the king along the rank both pawns stood on, e.g. f4xe3 after e2-e4 in
+	 * 8/2p5/3p4/KP5r/1R3p1k/8/4P1P1/8 w, so those have to be checked.
+	 *
+	 * @return whether the side that has just moved left its king in check
+	 */
+	static boolean isOwnKingInCheck(Position position) {
+		position.toggleToPlay();
+		boolean check = position.isCheck();
+		position.toggleToPlay();
+		return check;
+	}
+
+	/**
+	 * Subtree counts by hash code and depth, in a preallocated long[] of
+	 * two longs per entry: the key XORed with the count, and the count. Like
+	 * the TranspositionTable, it is shared by the threads without locking,
+	 * as an entry torn by concurrent writes does not XOR back to its key.
+	 * Entries are always replaced.
+	 */
+	static class PerftTable {
+
+		private final long[] table;
+
+		private final int mask;
+
+		/**
+		 * @param megabytes: Memory budget of the table; the number of entries
+		 * is rounded down to a power of two
+		 */
+		PerftTable(int megabytes) {
+			long entries = ((long) megabytes << 20) / (2 * Long.BYTES);
+			entries = Math.min(Long.highestOneBit(entries), 1L << 29);
+
+			table = new long[(int) entries * 2];
+			mask = (int) entries - 1;
+		}
+
+		/**
+		 * @return the count of the subtree, or -1 if it is not in the table
+		 */
+		long get(long hashCode, int depth) {
+			long key = getKey(hashCode, depth);
+			int index = getIndex(key);
+
+			long nodes = table[index + 1];
+			return (table[index] ^ nodes) == key ? nodes : -1;
+		}
+
+		void put(long hashCode, int depth, long nodes) {
+			long key = getKey(hashCode, depth);
+			int index = getIndex(key);
+
+			table[index] = key ^ nodes;
+			table[index + 1] = nodes;
+		}
+
+		/**
+		 * The same position is counted to different depths, so the depth is
+		 * mixed into the key.
+		 */
+		private static long getKey(long hashCode, int depth) {
+			return hashCode ^ (depth * 0x9E3779B97F4A7C15L);
+		}
+
+		private int getIndex(long key) {
+			return ((int) (key ^ (key >>> 32)) & mask) * 2;
+		}
+	}
+
+	public static void main(String[] args) throws InterruptedException {
+		if (args.length < 1) {
+			System.out.println("Usage: Perft depth [fen|startpos] [threads] [hash megabytes] [divide]");
+			return;
+		}
+
+		int depth = Integer.parseInt(args[0]);
+		Position position = args.length > 1 && !args[1].equals("startpos") ? new Position(args[1])
+				: Position.createInitialPosition();
+		int threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+		int megabytes = args.length > 3 ? Integer.parseInt(args[3]) : 64;
+		boolean divide = args.length > 4 && args[4].equals("divide");
+
+		Perft perft = new Perft(BitboardPosition::new, threads, megabytes);
+
+		long startTime = System.nanoTime();
+		long[][] counts = perft.divide(position, depth);
+		long time = System.nanoTime() - startTime;
+
+		long nodes = 0;
+		for (int i = 0; i < counts[0].length; i++) {
+			if (divide) {
+				System.out.println(MoveNotation.format((short) counts[0][i]) + ": " + counts[1][i]);
+			}
+			nodes += counts[1][i];
+		}
+
+		if (divide) {
+			System.out.println();
+			System.out.println("Moves: " + counts[0].length);
+		}
+		System.out.println("Nodes: " + nodes);
+		System.out.println(String.format("Time: %d ms, %.1f Mnps", time / 1000000, nodes * 1000.0 / Math.max(1, time)));
+	}
+}
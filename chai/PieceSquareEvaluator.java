@@ -0,0 +1,240 @@
+package chai;
+
+import java.util.Arrays;
+
+import chesspresso.Chess;
+import chesspresso.move.Move;
+
+/**
+ * Evaluates a position by material and piece-square tables, interpolated
+ * between a middlegame and an endgame score by the material left on the
+ * board (tapered evaluation).
+ *
+ * Both scores are kept from white's point of view and only updated by the
+ * pieces a move adds or removes; the previous values are kept on a stack so
+ * that taking a move back costs nothing.
+ */
+public class PieceSquareEvaluator implements Evaluator {
+
+	// indexed by chesspresso piece: none, knight, bishop, rook, queen, pawn, king
+	private static final int[] MATERIAL = {0, 300, 325, 500, 900, 100, 0};
+
+	private static final int[] PHASE = {0, 1, 1, 2, 4, 0, 0};
+
+	private static final int MAX_PHASE = 24;
+
+	// The tables below are laid out as seen by white, a8 first and h1 last
+
+	private static final int[] PAWN_MIDDLEGAME = {
+			  0,   0,   0,   0,   0,   0,   0,   0,
+			 50,  50,  50,  50,  50,  50,  50,  50,
+			 10,  10,  20,  30,  30,  20,  10,  10,
+			  5,   5,  10,  25,  25,  10,   5,   5,
+			  0,   0,   0,  20,  20,   0,   0,   0,
+			  5,  -5, -10,   0,   0, -10,  -5,   5,
+			  5,  10,  10, -20, -20,  10,  10,   5,
+			  0,   0,   0,   0,   0,   0,   0,   0 };
+
+	private static final int[] PAWN_ENDGAME = {
+			  0,   0,   0,   0,   0,   0,   0,   0,
+			 80,  80,  80,  80,  80,  80,  80,  80,
+			 50,  50,  50,  50,  50,  50,  50,  50,
+			 30,  30,  30,  30,  30,  30,  30,  30,
+			 15,  15,  15,  15,  15,  15,  15,  15,
+			  5,   5,   5,   5,   5,   5,   5,   5,
+			  0,   0,   0,   0,   0,   0,   0,   0,
+			  0,   0,   0,   0,   0,   0,   0,   0 };
+
+	private static final int[] KNIGHT = {
+			-50, -40, -30, -30, -30, -30, -40, -50,
+			-40, -20,   0,   0,   0,   0, -20, -40,
+			-30,   0,  10,  15,  15,  10,   0, -30,
+			-30,   5,  15,  20,  20,  15,   5, -30,
+			-30,   0,  15,  20,  20,  15,   0, -30,
+			-30,   5,  10,  15,  15,  10,   5, -30,
+			-40, -20,   0,   5,   5,   0, -20, -40,
+			-50, -40, -30, -30, -30, -30, -40, -50 };
+
+	private static final int[] BISHOP = {
+			-20, -10, -10, -10, -10, -10, -10, -20,
+			-10,   0,   0,   0,   0,   0,   0, -10,
+			-10,   0,   5,  10,  10,   5,   0, -10,
+			-10,   5,   5,  10,  10,   5,   5, -10,
+			-10,   0,  10,  10,  10,  10,   0, -10,
+			-10,  10,  10,  10,  10,  10,  10, -10,
+			-10,   5,   0,   0,   0,   0,   5, -10,
+			-20, -10, -10, -10, -10, -10, -10, -20 };
+
+	private static final int[] ROOK_MIDDLEGAME = {
+			  0,   0,   0,   0,   0,   0,   0,   0,
+			  5,  10,  10,  10,  10,  10,  10,   5,
+			 -5,   0,   0,   0,   0,   0,   0,  -5,
+			 -5,   0,   0,   0,   0,   0,   0,  -5,
+			 -5,   0,   0,   0,   0,   0,   0,  -5,
+			 -5,   0,   0,   0,   0,   0,   0,  -5,
+			 -5,   0,   0,   0,   0,   0,   0,  -5,
+			  0,   0,   0,   5,   5,   0,   0,   0 };
+
+	private static final int[] ROOK_ENDGAME = new int[64];
+
+	private static final int[] QUEEN = {
+			-20, -10, -10,  -5,  -5, -10, -10, -20,
+			-10,   0,   0,   0,   0,   0,   0, -10,
+			-10,   0,   5,   5,   5,   5,   0, -10,
+			 -5,   0,   5,   5,   5,   5,   0,  -5,
+			  0,   0,   5,   5,   5,   5,   0,  -5,
+			-10,   5,   5,   5,   5,   5,   0, -10,
+			-10,   0,   5,   0,   0,   0,   0, -10,
+			-20, -10, -10,  -5,  -5, -10, -10, -20 };
+
+	private static final int[] KING_MIDDLEGAME = {
+			-30, -40, -40, -50, -50, -40, -40, -30,
+			-30, -40, -40, -50, -50, -40, -40, -30,
+			-30, -40, -40, -50, -50, -40, -40, -30,
+			-30, -40, -40, -50, -50, -40, -40, -30,
+			-20, -30, -30, -40, -40, -30, -30, -20,
+			-10, -20, -20, -20, -20, -20, -20, -10,
+			 20,  20,   0,   0,   0,   0,  20,  20,
+			 20,  30,  10,   0,   0,  10,  30,  20 };
+
+	private static final int[] KING_ENDGAME = {
+			-50, -40, -30, -20, -20, -30, -40, -50,
+			-30, -20, -10,   0,   0, -10, -20, -30,
+			-30, -10,  20,  30,  30,  20, -10, -30,
+			-30, -10,  30,  40,  40,  30, -10, -30,
+			-30, -10,  30,  40,  40,  30, -10, -30,
+			-30, -10,  20,  30,  30,  20, -10, -30,
+			-30, -30,   0,   0,   0,   0, -30, -30,
+			-50, -30, -30, -30, -30, -30, -30, -50 };
+
+	// material plus piece-square value, indexed by stone + 6 and square,
+	// positive for white stones and negative for black ones
+	private static final int[][] MIDDLEGAME = new int[13][64];
+
+	private static final int[][] ENDGAME = new int[13][64];
+
+	static {
+		int[][] middlegame = {null, KNIGHT, BISHOP, ROOK_MIDDLEGAME, QUEEN, PAWN_MIDDLEGAME, KING_MIDDLEGAME};
+		int[][] endgame = {null, KNIGHT, BISHOP, ROOK_ENDGAME, QUEEN, PAWN_ENDGAME, KING_ENDGAME};
+
+		for (int piece = Chess.KNIGHT; piece <= Chess.KING; piece++) {
+			for (int sqi = 0; sqi < 64; sqi++) {
+				// white reads the tables upside down, black reads them as they are
+				MIDDLEGAME[6 - piece][sqi] = MATERIAL[piece] + middlegame[piece][sqi ^ 56];
+				ENDGAME[6 - piece][sqi] = MATERIAL[piece] + endgame[piece][sqi ^ 56];
+				MIDDLEGAME[6 + piece][sqi] = -MATERIAL[piece] - middlegame[piece][sqi];
+				ENDGAME[6 + piece][sqi] = -MATERIAL[piece] - endgame[piece][sqi];
+			}
+		}
+	}
+
+	private int middlegame;
+
+	private int endgame;
+
+	private int phase;
+
+	private int[] stack = new int[3 * MoveOrderer.MAX_PLY];
+
+	private int stackSize = 0;
+
+	@Override
+	public void reset(Board position) {
+		middlegame = 0;
+		endgame = 0;
+		phase = 0;
+		stackSize = 0;
+
+		for (int sqi = 0; sqi < Chess.NUM_OF_SQUARES; sqi++) {
+			int stone = position.getStone(sqi);
+			if (stone != Chess.NO_STONE) {
+				add(stone, sqi);
+			}
+		}
+	}
+
+	@Override
+	public void doMove(Board position, short move) {
+		if (stackSize + 3 > stack.length) {
+			stack = Arrays.copyOf(stack, 2 * stack.length);
+		}
+
+		stack[stackSize++] = middlegame;
+		stack[stackSize++] = endgame;
+		stack[stackSize++] = phase;
+
+		int color = position.getToPlay();
+		int king = color == Chess.WHITE ? Chess.WHITE_KING : Chess.BLACK_KING;
+		int rook = color == Chess.WHITE ? Chess.WHITE_ROOK : Chess.BLACK_ROOK;
+		int firstRowSqi = color == Chess.WHITE ? Chess.A1 : Chess.A8;
+
+		if (Move.isShortCastle(move)) {
+			move(king, firstRowSqi + 4, firstRowSqi + 6);
+			move(rook, firstRowSqi + 7, firstRowSqi + 5);
+			return;
+		}
+
+		if (Move.isLongCastle(move)) {
+			move(king, firstRowSqi + 4, firstRowSqi + 2);
+			move(rook, firstRowSqi, firstRowSqi + 3);
+			return;
+		}
+
+		int fromSqi = Move.getFromSqi(move);
+		int toSqi = Move.getToSqi(move);
+		int stone = position.getStone(fromSqi);
+
+		if (Move.isCapturing(move)) {
+			// the pawn taken en passant stands behind the target square
+			int capturedSqi = Move.isEPMove(move) ? toSqi + (color == Chess.WHITE ? -8 : 8) : toSqi;
+			remove(position.getStone(capturedSqi), capturedSqi);
+		}
+
+		remove(stone, fromSqi);
+
+		if (Move.isPromotion(move)) {
+			int piece = Move.getPromotionPiece(move);
+			add(color == Chess.WHITE ? -piece : piece, toSqi);
+		} else {
+			add(stone, toSqi);
+		}
+	}
+
+	@Override
+	public void undoMove() {
+		phase = stack[--stackSize];
+		endgame = stack[--stackSize];
+		middlegame = stack[--stackSize];
+	}
+
+	@Override
+	public int evaluate(Board position) {
+		int middlegamePhase = Math.min(phase, MAX_PHASE);
+
+		int value = (middlegame * middlegamePhase + endgame * (MAX_PHASE - middlegamePhase)) / MAX_PHASE;
+
+		if (position.getToPlay() == Chess.BLACK) {
+			value = -value;
+		}
+
+		// stay clear of the mate scores
+		return Math.max(-ChessAI.MATE_THRESHOLD + 1, Math.min(ChessAI.MATE_THRESHOLD - 1, value));
+	}
+
+	private void add(int stone, int sqi) {
+		middlegame += MIDDLEGAME[stone + 6][sqi];
+		endgame += ENDGAME[stone + 6][sqi];
+		phase += PHASE[Math.abs(stone)];
+	}
+
+	private void remove(int stone, int sqi) {
+		middlegame -= MIDDLEGAME[stone + 6][sqi];
+		endgame -= ENDGAME[stone + 6][sqi];
+		phase -= PHASE[Math.abs(stone)];
+	}
+
+	private void move(int stone, int fromSqi, int toSqi) {
+		remove(stone, fromSqi);
+		add(stone, toSqi);
+	}
+}
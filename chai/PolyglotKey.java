@@ -0,0 +1,118 @@
+package chai;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.function.ToLongFunction;
+
+import chesspresso.Chess;
+import chesspresso.position.ImmutablePosition;
+import chesspresso.position.Position;
+
+/**
+ * Computes the Zobrist key of a position the way Polyglot books do, so that
+ * books made by other tools can be read. The 781 random numbers of the
+ * Polyglot specification (pieces, castling rights, en passant file, side to
+ * move) are not part of this repository and have to be loaded from a file.
+ */
+public class PolyglotKey implements ToLongFunction<Position> {
+
+	public static final int RANDOM_COUNT = 781;
+
+	// key of the start position in the Polyglot specification
+	private static final long INITIAL_KEY = 0x463B96181691FC9CL;
+
+	private static final int CASTLE_OFFSET = 768;
+
+	private static final int EN_PASSANT_OFFSET = 772;
+
+	private static final int TURN_OFFSET = 780;
+
+	// Polyglot piece kind of a chesspresso piece, before adding 1 for white:
+	// none, knight, bishop, rook, queen, pawn, king
+	private static final int[] KINDS = {-1, 2, 4, 6, 8, 0, 10};
+
+	private final long[] random;
+
+	public PolyglotKey(long[] random) {
+		if (random.length != RANDOM_COUNT) {
+			throw new IllegalArgumentException("Polyglot keys need " + RANDOM_COUNT + " random numbers: " + random.length);
+		}
+		this.random = random.clone();
+	}
+
+	/**
+	 * Read the random numbers from a text file with the 781 numbers in
+	 * hexadecimal, separated by white space or commas, with or without a
+	 * leading 0x. Other numbers would key no position of a Polyglot book,
+	 * so the key of the start position is checked against the specification.
+	 */
+	public static PolyglotKey load(Path file) throws IOException {
+		String[] tokens = new String(Files.readAllBytes(file), "US-ASCII").trim().split("[\\s,]+");
+
+		long[] random = new long[tokens.length];
+		for (int i = 0; i < tokens.length; i++) {
+			String token = tokens[i].toLowerCase();
+			if (token.startsWith("0x")) {
+				token = token.substring(2);
+			}
+			if (token.endsWith("ull")) {
+				token = token.substring(0, token.length() - 3);
+			}
+			random[i] = Long.parseUnsignedLong(token, 16);
+		}
+
+		PolyglotKey key = new PolyglotKey(random);
+		if (key.applyAsLong(Position.createInitialPosition()) != INITIAL_KEY) {
+			throw new IOException("Not the Polyglot random numbers: " + file);
+		}
+		return key;
+	}
+
+	@Override
+	public long applyAsLong(Position position) {
+		long key = 0;
+
+		for (int sqi = 0; sqi < Chess.NUM_OF_SQUARES; sqi++) {
+			int piece = position.getPiece(sqi);
+			if (piece != Chess.NO_PIECE) {
+				int kind = KINDS[piece] + (position.getColor(sqi) == Chess.WHITE ? 1 : 0);
+				key ^= random[64 * kind + sqi];
+			}
+		}
+
+		int castles = position.getCastles();
+		if ((castles & ImmutablePosition.WHITE_SHORT_CASTLE) != 0) {
+			key ^= random[CASTLE_OFFSET];
+		}
+		if ((castles & ImmutablePosition.WHITE_LONG_CASTLE) != 0) {
+			key ^= random[CASTLE_OFFSET + 1];
+		}
+		if ((castles & ImmutablePosition.BLACK_SHORT_CASTLE) != 0) {
+			key ^= random[CASTLE_OFFSET + 2];
+		}
+		if ((castles & ImmutablePosition.BLACK_LONG_CASTLE) != 0) {
+			key ^= random[CASTLE_OFFSET + 3];
+		}
+
+		// the en passant file only counts if a pawn can actually capture
+		int sqiEP = position.getSqiEP();
+		if (sqiEP != Chess.NO_SQUARE) {
+			int toPlay = position.getToPlay();
+			int pawnStone = toPlay == Chess.WHITE ? Chess.WHITE_PAWN : Chess.BLACK_PAWN;
+			int pawnRow = Chess.sqiToRow(sqiEP) + (toPlay == Chess.WHITE ? -1 : 1);
+			int col = Chess.sqiToCol(sqiEP);
+
+			if ((col > 0 && position.getStone(Chess.coorToSqi(col - 1, pawnRow)) == pawnStone)
+					|| (col < 7 && position.getStone(Chess.coorToSqi(col + 1, pawnRow)) == pawnStone)) {
+				key ^= random[EN_PASSANT_OFFSET + col];
+			}
+		}
+
+		if (position.getToPlay() == Chess.WHITE) {
+			key ^= random[TURN_OFFSET];
+		}
+
+		return key;
+	}
+}
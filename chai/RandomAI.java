@@ -5,9 +5,15 @@ import java.util.Random;
 import chesspresso.position.Position;
 
 public class RandomAI implements ChessAI {
+	private final Random r = new Random();
+
+	public void setSeed(long seed) {
+		r.setSeed(seed);
+	}
+
 	public short getMove(Position position) {
 		short [] moves = position.getAllMoves();
-		short move = moves[new Random().nextInt(moves.length)];
+		short move = moves[r.nextInt(moves.length)];
 	
 		return move;
 	}
@@ -0,0 +1,19 @@
+package chai;
+
+/**
+ * Receives the progress of a search, e.g. to report it to a user interface.
+ */
+public interface SearchListener {
+
+	/**
+	 * Called by the searching thread after every completed iteration of
+	 * iterative deepening.
+	 *
+	 * @param depth: Depth of the iteration
+	 * @param value: Value of the best move from the point of view of the side to move
+	 * @param nodes: Number of positions the search has visited so far, in all of its threads
+	 * @param time: Milliseconds since the search started
+	 * @param principalVariation: Best move followed by the expected continuation
+	 */
+	void iterationCompleted(int depth, int value, long nodes, long time, short[] principalVariation);
+}
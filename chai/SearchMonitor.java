@@ -0,0 +1,112 @@
+package chai;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Exposes the search statistics of a MinimaxAI as a JMX MBean, so that
+ * JConsole or any other JMX client can watch a running engine.
+ */
+public class SearchMonitor implements SearchMonitorMBean {
+
+	private final MinimaxAI ai;
+
+	private ObjectName name = null;
+
+	public SearchMonitor(MinimaxAI ai) {
+		this.ai = ai;
+	}
+
+	/**
+	 * Register the monitor with the platform MBean server as
+	 * chai:type=MinimaxAI,name=&lt;name&gt;, replacing a monitor of the same name.
+	 *
+	 * @param name: Name that tells the AI apart from others in the same process
+	 */
+	public void register(String name) throws JMException {
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		ObjectName objectName = new ObjectName("chai:type=MinimaxAI,name=" + ObjectName.quote(name));
+
+		if (server.isRegistered(objectName)) {
+			server.unregisterMBean(objectName);
+		}
+		server.registerMBean(this, objectName);
+		this.name = objectName;
+	}
+
+	public void unregister() throws JMException {
+		if (name != null) {
+			ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+			name = null;
+		}
+	}
+
+	@Override
+	public long getNodes() {
+		return ai.getSearchStatistics().getNodes();
+	}
+
+	@Override
+	public long getQuiescenceNodes() {
+		return ai.getSearchStatistics().getQuiescenceNodes();
+	}
+
+	@Override
+	public long getNodesPerSecond() {
+		return ai.getSearchStatistics().getNodesPerSecond();
+	}
+
+	@Override
+	public int getCompletedDepth() {
+		return ai.getSearchStatistics().getCompletedDepth();
+	}
+
+	@Override
+	public long getTime() {
+		return ai.getSearchStatistics().getTime();
+	}
+
+	@Override
+	public long getTranspositionTableProbes() {
+		return ai.getSearchStatistics().getTranspositionTableProbes();
+	}
+
+	@Override
+	public long getTranspositionTableHits() {
+		return ai.getSearchStatistics().getTranspositionTableHits();
+	}
+
+	@Override
+	public long getTranspositionTableCutoffs() {
+		return ai.getSearchStatistics().getTranspositionTableCutoffs();
+	}
+
+	@Override
+	public long getBetaCutoffs() {
+		return ai.getSearchStatistics().getBetaCutoffs();
+	}
+
+	@Override
+	public double getFirstMoveCutoffRate() {
+		return ai.getSearchStatistics().getFirstMoveCutoffRate();
+	}
+
+	@Override
+	public double getBranchingFactor() {
+		SearchStatistics statistics = ai.getSearchStatistics();
+		return statistics.getBranchingFactor(statistics.getCompletedDepth());
+	}
+
+	@Override
+	public long getTotalNodes() {
+		return ai.getVisitedPositions() + ai.getQuiescencePositions();
+	}
+
+	@Override
+	public String getSummary() {
+		return ai.getSearchStatistics().toString();
+	}
+}
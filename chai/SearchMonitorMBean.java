@@ -0,0 +1,43 @@
+package chai;
+
+/**
+ * The management interface of SearchMonitor. All values except the totals
+ * are those of the last completed search; see SearchStatistics.
+ */
+public interface SearchMonitorMBean {
+
+	long getNodes();
+
+	long getQuiescenceNodes();
+
+	long getNodesPerSecond();
+
+	int getCompletedDepth();
+
+	long getTime();
+
+	long getTranspositionTableProbes();
+
+	long getTranspositionTableHits();
+
+	long getTranspositionTableCutoffs();
+
+	long getBetaCutoffs();
+
+	double getFirstMoveCutoffRate();
+
+	/**
+	 * @return the effective branching factor of the last completed iteration
+	 */
+	double getBranchingFactor();
+
+	/**
+	 * @return the number of positions visited by all searches so far
+	 */
+	long getTotalNodes();
+
+	/**
+	 * @return the statistics of the last search as one line
+	 */
+	String getSummary();
+}
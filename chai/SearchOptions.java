@@ -0,0 +1,71 @@
+package chai;
+
+/**
+ * Selective search features of MinimaxAI. Everything is disabled by default,
+ * and except for the quiescence search they only apply to the alpha-beta
+ * strategies.
+ */
+public class SearchOptions {
+
+	private boolean quiescenceSearch = false;
+
+	private boolean nullMovePruning = false;
+
+	private boolean lateMoveReductions = false;
+
+	private boolean checkExtensions = false;
+
+	/**
+	 * Continue the search beyond the maximum depth with captures and
+	 * promotions until the position is quiet, instead of evaluating it
+	 * in the middle of an exchange.
+	 */
+	public SearchOptions setQuiescenceSearch(boolean quiescenceSearch) {
+		this.quiescenceSearch = quiescenceSearch;
+		return this;
+	}
+
+	/**
+	 * Let the side to move pass and search the position with reduced depth;
+	 * if it still fails high, a real move would too. Never done in check or
+	 * when the side to move has only pawns left, where passing would be
+	 * better than any move (zugzwang).
+	 */
+	public SearchOptions setNullMovePruning(boolean nullMovePruning) {
+		this.nullMovePruning = nullMovePruning;
+		return this;
+	}
+
+	/**
+	 * Search quiet moves late in the move ordering with reduced depth, and
+	 * only re-search them at full depth if they beat alpha.
+	 */
+	public SearchOptions setLateMoveReductions(boolean lateMoveReductions) {
+		this.lateMoveReductions = lateMoveReductions;
+		return this;
+	}
+
+	/**
+	 * Search moves that give check one ply deeper.
+	 */
+	public SearchOptions setCheckExtensions(boolean checkExtensions) {
+		this.checkExtensions = checkExtensions;
+		return this;
+	}
+
+	public boolean isQuiescenceSearch() {
+		return quiescenceSearch;
+	}
+
+	public boolean isNullMovePruning() {
+		return nullMovePruning;
+	}
+
+	public boolean isLateMoveReductions() {
+		return lateMoveReductions;
+	}
+
+	public boolean isCheckExtensions() {
+		return checkExtensions;
+	}
+}
@@ -0,0 +1,193 @@
+package chai;
+
+import java.util.Arrays;
+
+/**
+ * Counters of a single search of MinimaxAI. Every search thread counts into
+ * its own instance without synchronization; when the search is over the
+ * counters of the helper threads are added to the main thread's, and the
+ * result is published by MinimaxAI.getSearchStatistics. The iterations are
+ * only those of the main thread.
+ */
+public class SearchStatistics {
+
+	// beta cutoffs by the index of the move that caused them; the last bucket counts all later moves
+	public static final int CUTOFF_HISTOGRAM_SIZE = 8;
+
+	private static final int MAX_ITERATIONS = MoveOrderer.MAX_PLY;
+
+	long nodes = 0;
+
+	long quiescenceNodes = 0;
+
+	long transpositionTableProbes = 0;
+
+	long transpositionTableHits = 0;
+
+	long transpositionTableCutoffs = 0;
+
+	long betaCutoffs = 0;
+
+	final long[] cutoffHistogram = new long[CUTOFF_HISTOGRAM_SIZE];
+
+	// total nodes and milliseconds since the start of the search when each iteration completed
+	private final long[] iterationNodes = new long[MAX_ITERATIONS + 1];
+
+	private final long[] iterationTimes = new long[MAX_ITERATIONS + 1];
+
+	private int completedDepth = 0;
+
+	private long time = 0;
+
+	void cutoff(int moveIndex) {
+		betaCutoffs++;
+		cutoffHistogram[Math.min(moveIndex, CUTOFF_HISTOGRAM_SIZE - 1)]++;
+	}
+
+	void iterationCompleted(int depth, long time) {
+		if (depth <= MAX_ITERATIONS) {
+			iterationNodes[depth] = getTotalNodes();
+			iterationTimes[depth] = time;
+			completedDepth = depth;
+		}
+	}
+
+	/**
+	 * Add the counters of a helper thread; its iterations are ignored.
+	 */
+	void add(SearchStatistics statistics) {
+		nodes += statistics.nodes;
+		quiescenceNodes += statistics.quiescenceNodes;
+		transpositionTableProbes += statistics.transpositionTableProbes;
+		transpositionTableHits += statistics.transpositionTableHits;
+		transpositionTableCutoffs += statistics.transpositionTableCutoffs;
+		betaCutoffs += statistics.betaCutoffs;
+		for (int i = 0; i < CUTOFF_HISTOGRAM_SIZE; i++) {
+			cutoffHistogram[i] += statistics.cutoffHistogram[i];
+		}
+	}
+
+	void setTime(long time) {
+		this.time = time;
+	}
+
+	/**
+	 * @return the number of positions visited by the full-width search
+	 */
+	public long getNodes() {
+		return nodes;
+	}
+
+	/**
+	 * @return the number of positions visited by the quiescence search
+	 */
+	public long getQuiescenceNodes() {
+		return quiescenceNodes;
+	}
+
+	public long getTotalNodes() {
+		return nodes + quiescenceNodes;
+	}
+
+	public long getTranspositionTableProbes() {
+		return transpositionTableProbes;
+	}
+
+	/**
+	 * @return the number of probes that found an entry of the position
+	 */
+	public long getTranspositionTableHits() {
+		return transpositionTableHits;
+	}
+
+	/**
+	 * @return the number of probes whose entry was deep and tight enough to return its score
+	 */
+	public long getTranspositionTableCutoffs() {
+		return transpositionTableCutoffs;
+	}
+
+	public long getBetaCutoffs() {
+		return betaCutoffs;
+	}
+
+	/**
+	 * @param moveIndex: Index of the move in the move ordering
+	 *
+	 * @return the number of beta cutoffs caused by that move, or by any
+	 * later one for the last index of the histogram
+	 */
+	public long getCutoffs(int moveIndex) {
+		return cutoffHistogram[Math.min(moveIndex, CUTOFF_HISTOGRAM_SIZE - 1)];
+	}
+
+	/**
+	 * @return the fraction of beta cutoffs caused by the first move, a
+	 * measure of the move ordering
+	 */
+	public double getFirstMoveCutoffRate() {
+		return betaCutoffs == 0 ? 0 : (double) cutoffHistogram[0] / betaCutoffs;
+	}
+
+	/**
+	 * @return the depth of the last completed iteration
+	 */
+	public int getCompletedDepth() {
+		return completedDepth;
+	}
+
+	/**
+	 * @return the number of nodes of the iteration of the given depth
+	 */
+	public long getIterationNodes(int depth) {
+		return depth <= completedDepth ? iterationNodes[depth] - iterationNodes[depth - 1] : 0;
+	}
+
+	/**
+	 * @return the milliseconds taken by the iteration of the given depth
+	 */
+	public long getIterationTime(int depth) {
+		return depth <= completedDepth ? iterationTimes[depth] - iterationTimes[depth - 1] : 0;
+	}
+
+	/**
+	 * @return the effective branching factor of the given depth: its nodes
+	 * divided by those of the previous iteration, or 0 if there is none
+	 */
+	public double getBranchingFactor(int depth) {
+		long previousNodes = depth >= 2 ? getIterationNodes(depth - 1) : 0;
+		return previousNodes == 0 ? 0 : (double) getIterationNodes(depth) / previousNodes;
+	}
+
+	/**
+	 * @return the milliseconds the whole search took
+	 */
+	public long getTime() {
+		return time;
+	}
+
+	public long getNodesPerSecond() {
+		return getTotalNodes() * 1000 / Math.max(1, time);
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder s = new StringBuilder()
+				.append("nodes ").append(nodes)
+				.append(", quiescence nodes ").append(quiescenceNodes)
+				.append(", depth ").append(completedDepth)
+				.append(", time ").append(time).append(" ms")
+				.append(", nps ").append(getNodesPerSecond())
+				.append(", tt probes ").append(transpositionTableProbes)
+				.append(" hits ").append(transpositionTableHits)
+				.append(" cutoffs ").append(transpositionTableCutoffs)
+				.append(", beta cutoffs ").append(betaCutoffs)
+				.append(String.format(" (%.1f%% first move)", 100 * getFirstMoveCutoffRate()))
+				.append(", histogram ").append(Arrays.toString(cutoffHistogram))
+				.append(", branching factors [");
+		for (int depth = 2; depth <= completedDepth; depth++) {
+			s.append(String.format(depth > 2 ? ", %.2f" : "%.2f", getBranchingFactor(depth)));
+		}
+		return s.append(']').toString();
+	}
+}
@@ -0,0 +1,24 @@
+package chai;
+
+/**
+ * The tree search used by MinimaxAI.
+ */
+public enum SearchStrategy {
+
+	/**
+	 * Plain minimax over the full tree, from the point of view of the AI's player.
+	 */
+	MINIMAX,
+
+	/**
+	 * Negamax with a full (alpha, beta) window.
+	 */
+	ALPHA_BETA,
+
+	/**
+	 * Alpha-beta that searches all but the first move of a node with a null
+	 * window, re-searching only the moves that turn out better, and starts
+	 * every iteration with an aspiration window around the previous score.
+	 */
+	PRINCIPAL_VARIATION
+}
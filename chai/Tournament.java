@@ -0,0 +1,495 @@
+package chai;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntFunction;
+
+import chesspresso.Chess;
+import chesspresso.move.IllegalMoveException;
+import chesspresso.position.Position;
+
+/**
+ * Plays a match between two AIs without a user interface, one game per
+ * core, and reports the Elo difference, a sequential probability ratio
+ * test, the move latencies and the nodes per second of both sides. Every
+ * opening is played twice with the colors swapped, and every game is
+ * written to a CSV file as soon as it is finished.
+ *
+ * The searches are deterministic, so a game that repeats an opening and
+ * its colors repeats every move and only counts the same result again.
+ * The openings come from a file with one FEN or EPD position per line, or
+ * else are a few random plies from the start position seeded by the
+ * opening number, and the AIs of every game are seeded by its number.
+ *
+ * AIs are given as kind[:depth[:flag...]], where the kind is random,
+ * minimax or alphabeta and the flags are tt (transposition table),
+ * selective (quiescence search, null moves, reductions and extensions),
+ * pst (piece-square evaluation), cb (moves generated by chesspresso
+ * instead of bitboards) and ms=N (milliseconds per move), e.g.
+ * alphabeta:6:tt:selective:pst.
+ *
+ * Usage: Tournament ai ai games [openings-file|-] [csv-file] [threads],
+ * where - plays random openings
+ */
+public class Tournament {
+
+	// games longer than this are adjudicated as draws
+	private static final int MAX_PLIES = 400;
+
+	private static final int TRANSPOSITION_TABLE_SIZE = 16;
+
+	// random plies from the start position of a generated opening
+	private static final int OPENING_PLIES = 8;
+
+	// SPRT of the hypotheses "no difference" against "the first AI is 10 Elo stronger"
+	private static final double ELO0 = 0;
+
+	private static final double ELO1 = 10;
+
+	private static final double ALPHA = 0.05;
+
+	private static final double BETA = 0.05;
+
+	private static final String[] RESULTS = { "1-0", "0-1", "1/2-1/2" };
+
+	private final String[] names;
+
+	private final List<IntFunction<ChessAI>> factories;
+
+	private final List<String> openings;
+
+	private final PrintWriter csv;
+
+	private final PrintStream out;
+
+	private final Statistics[] statistics = { new Statistics(), new Statistics() };
+
+	// wins, draws and losses of the first AI
+	private int wins = 0;
+
+	private int draws = 0;
+
+	private int losses = 0;
+
+	private int finishedGames = 0;
+
+	/**
+	 * @param openings: FEN positions the games start from, at least two
+	 */
+	public Tournament(String first, String second, List<String> openings, PrintWriter csv, PrintStream out) {
+		if (openings.size() < 2) {
+			throw new IllegalArgumentException("At least two openings are needed, since every game of a single "
+					+ "opening with the same colors is the same game");
+		}
+
+		this.names = new String[] { first, second };
+		this.factories = List.of(parseAI(first), parseAI(second));
+		this.openings = openings;
+		this.csv = csv;
+		this.out = out;
+	}
+
+	/**
+	 * Play the games on the given number of threads and wait until all are finished.
+	 */
+	public void play(int games, int threads) throws InterruptedException {
+		if (games > 2 * openings.size()) {
+			out.println("Warning: " + games + " games of " + openings.size()
+					+ " openings repeat the games of the first " + 2 * openings.size());
+		}
+
+		csv.println("game,opening,white,black,result,termination,plies,white_ms,black_ms,white_nodes,black_nodes");
+		csv.flush();
+
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+
+		for (int game = 0; game < games; game++) {
+			int number = game;
+			pool.execute(() -> playGame(number));
+		}
+
+		pool.shutdown();
+		pool.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+
+		report();
+	}
+
+	/**
+	 * Play one game; the first AI has white in even games.
+	 */
+	private void playGame(int game) {
+		int opening = (game / 2) % openings.size();
+		int firstColor = game % 2 == 0 ? Chess.WHITE : Chess.BLACK;
+
+		// indexed by color
+		int[] ais = { firstColor == Chess.WHITE ? 0 : 1, firstColor == Chess.WHITE ? 1 : 0 };
+		ChessAI[] players = new ChessAI[2];
+		for (int color = Chess.WHITE; color <= Chess.BLACK; color++) {
+			players[color] = factories.get(ais[color]).apply(color);
+			setSeed(players[color], 2L * game + color);
+		}
+
+		Position position = new Position(openings.get(opening));
+
+		long[] time = new long[2];
+		long[] nodes = new long[2];
+		List<List<Long>> latencies = List.of(new ArrayList<>(), new ArrayList<>());
+
+		Map<Long, Integer> repetitions = new HashMap<>();
+		String termination = null;
+		int result = 2;
+		int plies = 0;
+
+		while (termination == null) {
+			if (position.isMate()) {
+				termination = "mate";
+				result = position.getToPlay() == Chess.WHITE ? 1 : 0;
+			} else if (position.isStaleMate()) {
+				termination = "stalemate";
+			} else if (position.getHalfMoveClock() >= 100) {
+				termination = "fifty moves";
+			} else if (repetitions.merge(position.getHashCode(), 1, Integer::sum) >= 3) {
+				termination = "repetition";
+			} else if (isInsufficientMaterial(position)) {
+				termination = "material";
+			} else if (plies >= MAX_PLIES) {
+				termination = "adjudication";
+			} else {
+				int toPlay = position.getToPlay();
+				ChessAI player = players[toPlay];
+
+				long nodesBefore = getNodes(player);
+				long startTime = System.nanoTime();
+
+				short move = player.getMove(position);
+
+				long moveTime = System.nanoTime() - startTime;
+				time[toPlay] += moveTime;
+				nodes[toPlay] += getNodes(player) - nodesBefore;
+				latencies.get(toPlay).add(moveTime);
+
+				try {
+					position.doMove(move);
+				} catch (IllegalMoveException e) {
+					// an illegal move loses the game
+					termination = "illegal move";
+					result = toPlay == Chess.WHITE ? 1 : 0;
+					break;
+				}
+
+				plies++;
+			}
+		}
+
+		synchronized (this) {
+			for (int color = Chess.WHITE; color <= Chess.BLACK; color++) {
+				statistics[ais[color]].add(time[color], nodes[color], latencies.get(color));
+			}
+
+			if (result == 2) {
+				draws++;
+			} else if (result == firstColor) {
+				wins++;
+			} else {
+				losses++;
+			}
+			finishedGames++;
+
+			csv.println(game + "," + opening + "," + names[ais[Chess.WHITE]] + "," + names[ais[Chess.BLACK]] + ","
+					+ RESULTS[result] + "," + termination + "," + plies + ","
+					+ time[Chess.WHITE] / 1000000 + "," + time[Chess.BLACK] / 1000000 + ","
+					+ nodes[Chess.WHITE] + "," + nodes[Chess.BLACK]);
+			csv.flush();
+
+			out.println(String.format("Game %d: %s %s (%s); %s", game, RESULTS[result], termination,
+					names[ais[Chess.WHITE]] + " - " + names[ais[Chess.BLACK]], getScore()));
+		}
+	}
+
+	private synchronized String getScore() {
+		int games = wins + draws + losses;
+		double score = getScore(games);
+		double variance = getVariance(score, games);
+		double margin = 1.96 * Math.sqrt(variance / games);
+
+		return String.format("+%d =%d -%d, Elo %.1f +/- %.1f, LLR %.2f [%.2f, %.2f]", wins, draws, losses,
+				getElo(score), (getElo(score + margin) - getElo(score - margin)) / 2,
+				getLogLikelihoodRatio(score, variance, games), Math.log(BETA / (1 - ALPHA)),
+				Math.log((1 - BETA) / ALPHA));
+	}
+
+	private void report() {
+		out.println();
+		out.println(names[0] + " vs " + names[1] + " after " + finishedGames + " games: " + getScore());
+
+		int games = wins + draws + losses;
+		double score = getScore(games);
+		double variance = getVariance(score, games);
+		double llr = getLogLikelihoodRatio(score, variance, games);
+
+		if (llr >= Math.log((1 - BETA) / ALPHA)) {
+			out.println("SPRT: H1 accepted, " + names[0] + " is at least " + ELO1 + " Elo stronger");
+		} else if (llr <= Math.log(BETA / (1 - ALPHA))) {
+			out.println("SPRT: H0 accepted, " + names[0] + " is not " + ELO1 + " Elo stronger");
+		} else {
+			out.println("SPRT: inconclusive, more games are needed");
+		}
+
+		for (int i = 0; i < 2; i++) {
+			out.println(names[i] + ": " + statistics[i]);
+		}
+	}
+
+	private double getScore(int games) {
+		return (wins + draws / 2.0) / games;
+	}
+
+	/**
+	 * @return the variance of the result of a single game
+	 */
+	private double getVariance(double score, int games) {
+		return (wins * Math.pow(1 - score, 2) + draws * Math.pow(0.5 - score, 2) + losses * Math.pow(score, 2))
+				/ games;
+	}
+
+	/**
+	 * @return the Elo difference that gives the expected score
+	 */
+	private static double getElo(double score) {
+		score = Math.max(1e-6, Math.min(1 - 1e-6, score));
+		return -400 * Math.log10(1 / score - 1);
+	}
+
+	/**
+	 * Log-likelihood ratio of ELO1 against ELO0 for the observed score, in
+	 * the normal approximation of the game results.
+	 */
+	private static double getLogLikelihoodRatio(double score, double variance, int games) {
+		if (variance == 0) {
+			return 0;
+		}
+		double score0 = 1 / (1 + Math.pow(10, -ELO0 / 400));
+		double score1 = 1 / (1 + Math.pow(10, -ELO1 / 400));
+		return games * (score1 - score0) * (2 * score - score0 - score1) / (2 * variance);
+	}
+
+	private static void setSeed(ChessAI ai, long seed) {
+		if (ai instanceof MinimaxAI) {
+			((MinimaxAI) ai).setSeed(seed);
+		} else if (ai instanceof RandomAI) {
+			((RandomAI) ai).setSeed(seed);
+		}
+	}
+
+	private static long getNodes(ChessAI ai) {
+		if (ai instanceof MinimaxAI) {
+			MinimaxAI minimaxAI = (MinimaxAI) ai;
+			return minimaxAI.getVisitedPositions() + minimaxAI.getQuiescencePositions();
+		}
+		return 0;
+	}
+
+	/**
+	 * @return whether neither side can mate: bare kings, or a single minor piece
+	 */
+	private static boolean isInsufficientMaterial(Position position) {
+		int minorPieces = 0;
+		for (int sqi = 0; sqi < Chess.NUM_OF_SQUARES; sqi++) {
+			int piece = position.getPiece(sqi);
+			if (piece == Chess.KNIGHT || piece == Chess.BISHOP) {
+				minorPieces++;
+			} else if (piece != Chess.NO_PIECE && piece != Chess.KING) {
+				return false;
+			}
+		}
+		return minorPieces <= 1;
+	}
+
+	/**
+	 * @return the position after OPENING_PLIES random moves from the start
+	 * position, chosen by a generator seeded with the opening number
+	 */
+	static String getRandomOpening(int opening) {
+		Random random = new Random(opening);
+
+		while (true) {
+			Position position = Position.createInitialPosition();
+			for (int ply = 0; ply < OPENING_PLIES && !position.isTerminal(); ply++) {
+				short[] moves = position.getAllMoves();
+				try {
+					position.doMove(moves[random.nextInt(moves.length)]);
+				} catch (IllegalMoveException e) {
+					throw new IllegalStateException(e);
+				}
+			}
+
+			if (!position.isTerminal()) {
+				return position.getFEN();
+			}
+		}
+	}
+
+	/**
+	 * @return the position of a FEN line, or of an EPD line, whose
+	 * operations are replaced by the move counters
+	 */
+	private static String parseOpening(String line) {
+		String[] fields = line.split("\\s+");
+		if (fields.length >= 6 && fields[4].matches("\\d+") && fields[5].matches("\\d+")) {
+			return String.join(" ", Arrays.copyOf(fields, 6));
+		}
+		if (fields.length < 4) {
+			throw new IllegalArgumentException("Not a FEN or EPD position: " + line);
+		}
+		return String.join(" ", Arrays.copyOf(fields, 4)) + " 0 1";
+	}
+
+	/**
+	 * @return a factory for the AI of a color as described in the class comment
+	 */
+	static IntFunction<ChessAI> parseAI(String description) {
+		String[] parts = description.split(":");
+		int depth = parts.length > 1 ? Integer.parseInt(parts[1]) : 4;
+
+		boolean transpositionTable = false;
+		boolean selective = false;
+		boolean pieceSquare = false;
+		boolean chesspresso = false;
+		long moveTime = 0;
+
+		for (int i = 2; i < parts.length; i++) {
+			if (parts[i].equals("tt")) {
+				transpositionTable = true;
+			} else if (parts[i].equals("selective")) {
+				selective = true;
+			} else if (parts[i].equals("pst")) {
+				pieceSquare = true;
+			} else if (parts[i].equals("cb")) {
+				chesspresso = true;
+			} else if (parts[i].startsWith("ms=")) {
+				moveTime = Long.parseLong(parts[i].substring(3));
+			} else {
+				throw new IllegalArgumentException("Unknown flag " + parts[i] + " in " + description);
+			}
+		}
+
+		boolean alphaBeta;
+		switch (parts[0]) {
+		case "random":
+			return color -> new RandomAI();
+		case "minimax":
+			alphaBeta = false;
+			break;
+		case "alphabeta":
+			alphaBeta = true;
+			break;
+		default:
+			throw new IllegalArgumentException("Unknown AI " + parts[0] + " in " + description);
+		}
+
+		boolean tableEnabled = transpositionTable;
+		boolean selectiveSearch = selective;
+		boolean pieceSquareEvaluation = pieceSquare;
+		boolean chesspressoBoard = chesspresso;
+		long time = moveTime;
+
+		return color -> {
+			SearchOptions options = new SearchOptions()
+					.setQuiescenceSearch(selectiveSearch)
+					.setNullMovePruning(selectiveSearch)
+					.setLateMoveReductions(selectiveSearch)
+					.setCheckExtensions(selectiveSearch);
+			TranspositionTable table = tableEnabled ? new TranspositionTable(TRANSPOSITION_TABLE_SIZE) : null;
+			MinimaxAI ai = alphaBeta ? new AlphaBetaPruningAI(color, depth, table, options)
+					: new MinimaxAI(color, depth, SearchStrategy.MINIMAX, table, options);
+			if (pieceSquareEvaluation) {
+				ai.setEvaluator(PieceSquareEvaluator::new);
+			}
+			if (chesspressoBoard) {
+				ai.setBoard(ChesspressoBoard::new);
+			}
+			ai.setMoveTime(time);
+			return ai;
+		};
+	}
+
+	/**
+	 * Move times and node counts of one AI over all of its games.
+	 */
+	private static class Statistics {
+
+		private final List<Long> latencies = new ArrayList<>();
+
+		private long time = 0;
+
+		private long nodes = 0;
+
+		void add(long time, long nodes, List<Long> latencies) {
+			this.time += time;
+			this.nodes += nodes;
+			this.latencies.addAll(latencies);
+		}
+
+		@Override
+		public String toString() {
+			if (latencies.isEmpty()) {
+				return "no moves";
+			}
+
+			List<Long> sorted = new ArrayList<>(latencies);
+			Collections.sort(sorted);
+
+			return String.format("%d moves, latency p50 %.1f ms, p90 %.1f ms, p99 %.1f ms, max %.1f ms, %.0f nps",
+					sorted.size(), getPercentile(sorted, 50), getPercentile(sorted, 90),
+					getPercentile(sorted, 99), sorted.get(sorted.size() - 1) / 1e6,
+					nodes / Math.max(time / 1e9, 1e-9));
+		}
+
+		private static double getPercentile(List<Long> sorted, int percentile) {
+			int index = (int) Math.ceil(percentile / 100.0 * sorted.size()) - 1;
+			return sorted.get(Math.max(0, index)) / 1e6;
+		}
+	}
+
+	public static void main(String[] args) throws IOException, InterruptedException {
+		if (args.length < 3) {
+			System.out.println("Usage: Tournament ai ai games [openings-file|-] [csv-file] [threads]");
+			return;
+		}
+
+		List<String> openings = new ArrayList<>();
+		if (args.length > 3 && !args[3].equals("-")) {
+			for (String line : Files.readAllLines(Paths.get(args[3]))) {
+				line = line.trim();
+				if (!line.isEmpty() && !line.startsWith("#")) {
+					openings.add(parseOpening(line));
+				}
+			}
+		} else {
+			int games = Integer.parseInt(args[2]);
+			for (int opening = 0; opening < Math.max(2, (games + 1) / 2); opening++) {
+				openings.add(getRandomOpening(opening));
+			}
+		}
+
+		String csvFile = args.length > 4 ? args[4] : "tournament.csv";
+		int threads = args.length > 5 ? Integer.parseInt(args[5]) : Runtime.getRuntime().availableProcessors();
+
+		try (PrintWriter csv = new PrintWriter(Files.newBufferedWriter(Paths.get(csvFile)))) {
+			new Tournament(args[0], args[1], openings, csv, System.out).play(Integer.parseInt(args[2]), threads);
+		}
+	}
+}
@@ -0,0 +1,191 @@
+package chai;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A fixed-size transposition table backed by a single preallocated long[].
+ *
+ * The table is split into buckets of two entries: the first entry of each
+ * bucket is depth-preferred and only replaced by a search of at least the
+ * same depth (or by an entry from a newer search), the second one is always
+ * replaced. Every entry takes two longs, the position key XORed with the
+ * packed data and the packed data itself:
+ *
+ *   bits  0-31  score
+ *   bits 32-39  depth
+ *   bits 40-41  bound type
+ *   bits 42-47  search generation
+ *   bits 48-63  best move
+ *
+ * The table can be shared by several search threads without locking: an
+ * entry torn by concurrent writes no longer XORs back to its key, so it is
+ * simply treated as a miss.
+ */
+public class TranspositionTable {
+
+	public static final int LOWER_BOUND = 1;
+	public static final int UPPER_BOUND = 2;
+	public static final int EXACT = 3;
+
+	public static final int MAX_DEPTH = Byte.MAX_VALUE;
+
+	public static final int DEFAULT_SIZE = 64;
+
+	private static final int BUCKET_SIZE = 4;
+
+	private static final int GENERATION_MASK = 0x3F;
+
+	private final long[] table;
+
+	private final int mask;
+
+	private volatile int generation = 0;
+
+	private final LongAdder hits = new LongAdder();
+
+	private final LongAdder misses = new LongAdder();
+
+	private final LongAdder collisions = new LongAdder();
+
+	/**
+	 * Create a table occupying at most the given number of megabytes. The
+	 * number of buckets is rounded down to a power of two.
+	 *
+	 * @param megabytes: Memory budget of the table
+	 */
+	public TranspositionTable(int megabytes) {
+		if (megabytes <= 0) {
+			throw new IllegalArgumentException("Transposition table size must be positive: " + megabytes);
+		}
+
+		long buckets = ((long) megabytes << 20) / (BUCKET_SIZE * Long.BYTES);
+		// a long[] is indexed by int, so cap the number of buckets at 2^28
+		buckets = Math.min(Long.highestOneBit(buckets), 1L << 28);
+
+		table = new long[(int) buckets * BUCKET_SIZE];
+		mask = (int) buckets - 1;
+	}
+
+	/**
+	 * Look up a position in the table.
+	 *
+	 * @param key: Zobrist key of the position
+	 *
+	 * @return the packed entry data, or 0 if the position is not in the table
+	 */
+	public long probe(long key) {
+		int index = getIndex(key);
+
+		for (int i = index; i < index + BUCKET_SIZE; i += 2) {
+			long data = table[i + 1];
+			if (data != 0 && (table[i] ^ data) == key) {
+				hits.increment();
+				return data;
+			}
+		}
+
+		misses.increment();
+		return 0;
+	}
+
+	/**
+	 * Store the result of a search in the table.
+	 *
+	 * @param key: Zobrist key of the position
+	 * @param depth: Remaining depth of the search, capped at MAX_DEPTH
+	 * @param score: Score of the position from the point of view of the side to move
+	 * @param bound: EXACT, LOWER_BOUND or UPPER_BOUND
+	 * @param move: Best move found in the position, or 0 if there is none
+	 */
+	public void store(long key, int depth, int score, int bound, short move) {
+		int index = getIndex(key);
+
+		long data = pack(Math.min(depth, MAX_DEPTH), score, bound, move);
+
+		long preferred = table[index + 1];
+
+		// the depth-preferred slot takes the entry if it is empty, holds the same
+		// position, is left over from an older search or was searched less deeply
+		int slot = preferred == 0
+				|| (table[index] ^ preferred) == key
+				|| getGeneration(preferred) != generation
+				|| getDepth(preferred) <= depth ? index : index + 2;
+
+		long replaced = table[slot + 1];
+		if (replaced != 0 && (table[slot] ^ replaced) != key) {
+			collisions.increment();
+		}
+
+		table[slot] = key ^ data;
+		table[slot + 1] = data;
+	}
+
+	/**
+	 * Start a new search, so that the depth-preferred entries of the previous
+	 * searches can be replaced.
+	 */
+	public void newSearch() {
+		generation = (generation + 1) & GENERATION_MASK;
+	}
+
+	public void clear() {
+		Arrays.fill(table, 0);
+		generation = 0;
+		resetStatistics();
+	}
+
+	public void resetStatistics() {
+		hits.reset();
+		misses.reset();
+		collisions.reset();
+	}
+
+	public long getHits() {
+		return hits.sum();
+	}
+
+	public long getMisses() {
+		return misses.sum();
+	}
+
+	public long getCollisions() {
+		return collisions.sum();
+	}
+
+	public int getCapacity() {
+		return table.length / 2;
+	}
+
+	public static int getScore(long data) {
+		return (int) data;
+	}
+
+	public static int getDepth(long data) {
+		return (byte) (data >>> 32);
+	}
+
+	public static int getBound(long data) {
+		return (int) (data >>> 40) & 0x3;
+	}
+
+	public static short getMove(long data) {
+		return (short) (data >>> 48);
+	}
+
+	private static int getGeneration(long data) {
+		return (int) (data >>> 42) & GENERATION_MASK;
+	}
+
+	private long pack(int depth, int score, int bound, short move) {
+		return (score & 0xFFFFFFFFL)
+				| (depth & 0xFFL) << 32
+				| (long) bound << 40
+				| (long) generation << 42
+				| (move & 0xFFFFL) << 48;
+	}
+
+	private int getIndex(long key) {
+		return ((int) (key ^ (key >>> 32)) & mask) * BUCKET_SIZE;
+	}
+}
@@ -0,0 +1,404 @@
+package chai;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.util.function.IntFunction;
+
+import javax.management.JMException;
+
+import chesspresso.Chess;
+import chesspresso.position.Position;
+
+/**
+ * A front end speaking the UCI protocol on standard input and output, so
+ * that the AIs can play under chess GUIs and tournament managers without
+ * the JavaFX client.
+ *
+ * Supported commands: uci, isready, ucinewgame, setoption (Threads),
+ * position startpos|fen ... [moves ...], go [depth|movetime|wtime|btime|
+ * winc|binc|movestogo|infinite|ponder], stop, ponderhit and quit. MinimaxAIs
+ * report every iteration with an info line, and their search statistics
+ * are published as JMX MBeans named chai:type=MinimaxAI,name=white|black.
+ *
+ * Usage: UCIEngine [transposition table megabytes]
+ */
+public class UCIEngine {
+
+	private static final String NAME = "chai";
+
+	// depth limit of a search that is only limited by time
+	private static final int DEFAULT_DEPTH = 64;
+
+	// moves left in the game when the GUI does not say
+	private static final int DEFAULT_MOVES_TO_GO = 30;
+
+	// time kept back for the communication with the GUI
+	private static final long SAFETY_MARGIN = 50;
+
+	// time of a ponder search after ponderhit when go ponder had neither
+	// time controls nor a depth
+	private static final long DEFAULT_PONDER_MOVE_TIME = 5000;
+
+	private final IntFunction<? extends ChessAI> factory;
+
+	private final PrintStream out;
+
+	// one AI for each color, created when first needed
+	private final ChessAI[] ais = new ChessAI[2];
+
+	private int threads = 1;
+
+	private Position position = Position.createInitialPosition();
+
+	private Thread searchThread = null;
+
+	private ChessAI searchingAI = null;
+
+	// an infinite or ponder search must not report its move before stop or ponderhit
+	private boolean holdBestMove = false;
+
+	// the time of a ponder search once the expected move has been played
+	private long ponderMoveTime = 0;
+
+	/**
+	 * @param factory: Creates the AI of a color
+	 * @param out: Stream the engine writes its protocol output to
+	 */
+	public UCIEngine(IntFunction<? extends ChessAI> factory, PrintStream out) {
+		this.factory = factory;
+		this.out = out;
+	}
+
+	/**
+	 * Process commands until quit or the end of the input.
+	 */
+	public void run(BufferedReader in) throws IOException {
+		String line;
+		while ((line = in.readLine()) != null) {
+			String[] tokens = line.trim().split("\\s+");
+
+			switch (tokens[0]) {
+			case "uci":
+				out.println("id name " + NAME);
+				out.println("id author " + NAME);
+				out.println("option name Threads type spin default 1 min 1 max 64");
+				out.println("option name Ponder type check default true");
+				out.println("uciok");
+				break;
+			case "isready":
+				out.println("readyok");
+				break;
+			case "setoption":
+				setOption(tokens);
+				break;
+			case "ucinewgame":
+				stopSearch();
+				// new AIs start with empty transposition tables
+				ais[Chess.WHITE] = null;
+				ais[Chess.BLACK] = null;
+				break;
+			case "position":
+				stopSearch();
+				setPosition(tokens);
+				break;
+			case "go":
+				stopSearch();
+				go(tokens);
+				break;
+			case "stop":
+				stopSearch();
+				break;
+			case "ponderhit":
+				ponderHit();
+				break;
+			case "quit":
+				stopSearch();
+				return;
+			default:
+				// unknown commands are ignored, as the protocol demands
+				break;
+			}
+		}
+
+		stopSearch();
+	}
+
+	private void setOption(String[] tokens) {
+		// setoption name Threads value 4
+		if (tokens.length >= 5 && tokens[2].equalsIgnoreCase("Threads")) {
+			threads = Math.max(1, Integer.parseInt(tokens[4]));
+			for (ChessAI ai : ais) {
+				if (ai instanceof MinimaxAI) {
+					((MinimaxAI) ai).setThreads(threads);
+				}
+			}
+		}
+	}
+
+	private void setPosition(String[] tokens) {
+		int index = 1;
+
+		if (tokens.length > 1 && tokens[1].equals("fen")) {
+			StringBuilder fen = new StringBuilder();
+			for (index = 2; index < tokens.length && !tokens[index].equals("moves"); index++) {
+				fen.append(tokens[index]).append(' ');
+			}
+			position = new Position(fen.toString().trim());
+		} else {
+			position = Position.createInitialPosition();
+			index = 2;
+		}
+
+		if (index < tokens.length && tokens[index].equals("moves")) {
+			for (index++; index < tokens.length; index++) {
+				short move = MoveNotation.parse(position, tokens[index]);
+				if (move == 0) {
+					System.err.println("Illegal move " + tokens[index]);
+					return;
+				}
+
+				try {
+					position.doMove(move);
+				} catch (Exception e) {
+					e.printStackTrace();
+					return;
+				}
+			}
+		}
+	}
+
+	private void go(String[] tokens) {
+		int depth = 0;
+		long moveTime = 0;
+		long[] times = new long[2];
+		long[] increments = new long[2];
+		int movesToGo = DEFAULT_MOVES_TO_GO;
+		boolean infinite = false;
+		boolean ponder = false;
+
+		for (int i = 1; i < tokens.length; i++) {
+			switch (tokens[i]) {
+			case "depth":
+				depth = Integer.parseInt(tokens[++i]);
+				break;
+			case "movetime":
+				moveTime = Long.parseLong(tokens[++i]);
+				break;
+			case "wtime":
+				times[Chess.WHITE] = Long.parseLong(tokens[++i]);
+				break;
+			case "btime":
+				times[Chess.BLACK] = Long.parseLong(tokens[++i]);
+				break;
+			case "winc":
+				increments[Chess.WHITE] = Long.parseLong(tokens[++i]);
+				break;
+			case "binc":
+				increments[Chess.BLACK] = Long.parseLong(tokens[++i]);
+				break;
+			case "movestogo":
+				movesToGo = Math.max(1, Integer.parseInt(tokens[++i]));
+				break;
+			case "infinite":
+				infinite = true;
+				break;
+			case "ponder":
+				ponder = true;
+				break;
+			default:
+				break;
+			}
+		}
+
+		int toPlay = position.getToPlay();
+
+		// Spread the remaining time over the moves to go, but never use
+		// more than there is
+		if (moveTime == 0 && times[toPlay] > 0) {
+			moveTime = times[toPlay] / movesToGo + increments[toPlay] * 3 / 4;
+			moveTime = Math.max(1, Math.min(moveTime, times[toPlay] - SAFETY_MARGIN));
+		}
+
+		ChessAI ai = getAI(toPlay);
+		if (ai instanceof MinimaxAI) {
+			((MinimaxAI) ai).setMaximumDepth(depth > 0 ? depth : DEFAULT_DEPTH);
+		}
+
+		long deadline = moveTime > 0 && !infinite && !ponder
+				? System.currentTimeMillis() + moveTime : Long.MAX_VALUE;
+
+		synchronized (this) {
+			holdBestMove = infinite || ponder;
+		}
+		ponderMoveTime = ponder ? moveTime : 0;
+		if (ponder && moveTime == 0 && depth == 0) {
+			ponderMoveTime = DEFAULT_PONDER_MOVE_TIME;
+		}
+
+		Position searchPosition = new Position(position);
+
+		searchingAI = ai;
+		searchThread = new Thread(() -> search(ai, searchPosition, deadline), "UCIEngine search");
+		searchThread.start();
+	}
+
+	private void search(ChessAI ai, Position searchPosition, long deadline) {
+		short move = ai.getMove(searchPosition, deadline);
+
+		synchronized (this) {
+			while (holdBestMove) {
+				try {
+					wait();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					break;
+				}
+			}
+		}
+
+		String bestMove = "bestmove " + MoveNotation.format(move);
+
+		if (move != 0 && ai instanceof MinimaxAI) {
+			try {
+				searchPosition.doMove(move);
+				short ponderMove = ((MinimaxAI) ai).getPonderMove(searchPosition);
+				if (ponderMove != 0) {
+					bestMove += " ponder " + MoveNotation.format(ponderMove);
+				}
+			} catch (Exception e) {
+				e.printStackTrace();
+			}
+		}
+
+		out.println(bestMove);
+	}
+
+	/**
+	 * The opponent played the expected move: the ponder search continues as
+	 * a normal search with the time of the move.
+	 */
+	private void ponderHit() {
+		release();
+
+		if (searchThread == null || !(searchingAI instanceof MinimaxAI) || ponderMoveTime == 0) {
+			return;
+		}
+
+		MinimaxAI ai = (MinimaxAI) searchingAI;
+		long deadline = System.currentTimeMillis() + ponderMoveTime;
+
+		// A search that has not started yet would overwrite the deadline, so
+		// wait until it has, or until it has played a book or tablebase move
+		while (searchThread.isAlive()) {
+			if (ai.isSearching()) {
+				ai.setDeadline(deadline);
+				return;
+			}
+			try {
+				searchThread.join(1);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Stop the running search, if any, and wait until it has reported its move.
+	 */
+	private void stopSearch() {
+		if (searchThread == null) {
+			return;
+		}
+
+		release();
+
+		// A search that has not started yet would reset the stop flag
+		while (searchThread.isAlive()) {
+			if (searchingAI instanceof MinimaxAI) {
+				((MinimaxAI) searchingAI).stop();
+			}
+			try {
+				searchThread.join(10);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+
+		searchThread = null;
+		searchingAI = null;
+	}
+
+	/**
+	 * @return "cp" and the value, or "mate" and the moves to mate, negative
+	 * when the engine is mated
+	 */
+	private static String formatScore(int value) {
+		if (value >= ChessAI.MATE_THRESHOLD) {
+			return "mate " + (ChessAI.MAX_VALUE - value + 1) / 2;
+		}
+		if (value <= -ChessAI.MATE_THRESHOLD) {
+			return "mate " + -(ChessAI.MAX_VALUE + value) / 2;
+		}
+		return "cp " + value;
+	}
+
+	private synchronized void release() {
+		holdBestMove = false;
+		notifyAll();
+	}
+
+	private ChessAI getAI(int color) {
+		if (ais[color] == null) {
+			ChessAI ai = factory.apply(color);
+
+			if (ai instanceof MinimaxAI) {
+				MinimaxAI minimaxAI = (MinimaxAI) ai;
+				minimaxAI.setThreads(threads);
+				minimaxAI.setSearchListener((depth, value, nodes, time, principalVariation) -> {
+					StringBuilder info = new StringBuilder("info depth ").append(depth)
+							.append(" score ").append(formatScore(value))
+							.append(" nodes ").append(nodes)
+							.append(" nps ").append(nodes * 1000 / Math.max(1, time))
+							.append(" time ").append(time)
+							.append(" pv");
+					for (short move : principalVariation) {
+						info.append(' ').append(MoveNotation.format(move));
+					}
+					out.println(info);
+				});
+
+				// a new AI replaces the monitor of the old one
+				try {
+					new SearchMonitor(minimaxAI).register(color == Chess.WHITE ? "white" : "black");
+				} catch (JMException e) {
+					e.printStackTrace();
+				}
+			}
+
+			ais[color] = ai;
+		}
+		return ais[color];
+	}
+
+	public static void main(String[] args) throws IOException {
+		int megabytes = args.length > 0 ? Integer.parseInt(args[0]) : TranspositionTable.DEFAULT_SIZE;
+
+		SearchOptions options = new SearchOptions()
+				.setQuiescenceSearch(true)
+				.setNullMovePruning(true)
+				.setLateMoveReductions(true)
+				.setCheckExtensions(true);
+
+		UCIEngine engine = new UCIEngine(color -> {
+			MinimaxAI ai = new AlphaBetaPruningAI(color, DEFAULT_DEPTH, new TranspositionTable(megabytes), options);
+			ai.setEvaluator(PieceSquareEvaluator::new);
+			ai.setBoard(BitboardPosition::new);
+			return ai;
+		}, System.out);
+
+		engine.run(new BufferedReader(new InputStreamReader(System.in)));
+	}
+}